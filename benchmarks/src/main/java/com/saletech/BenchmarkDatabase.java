@@ -0,0 +1,94 @@
+package com.saletech;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BenchmarkDatabase
+ *
+ * Embedded H2 databases in MySQL mode with the application schema, and a
+ * deterministic product catalog to fill them with.
+ */
+final class BenchmarkDatabase {
+
+    private static final String[] ADJECTIVES = {
+            "Steel", "Compact", "Wireless", "Heavy", "Smart", "Classic", "Portable", "Digital"
+    };
+    private static final String[] NOUNS = {
+            "Drill", "Router", "Keyboard", "Monitor", "Bracket", "Speaker", "Charger", "Sensor", "Cable"
+    };
+    private static final String[] MANUFACTURERS = {
+            "Acme", "Globex", "Initech", "Umbrella", "Stark", "Wayne", "Hooli"
+    };
+
+    /** Search terms that match part of the generated catalog. */
+    static final String[] SEARCH_TERMS = { "steel", "router", "acme", "tab", "hooli", "wireless key" };
+
+    private BenchmarkDatabase() { }
+
+    /**
+     * Creates an empty in-memory database with the schema and returns a
+     * pool for it. Each name is a separate database.
+     */
+    static PooledDataSource open(String name, int poolSize) throws SQLException, IOException {
+        PooledDataSource dataSource = connect(name, poolSize);
+
+        String schema;
+        try (InputStream in = BenchmarkDatabase.class.getResourceAsStream("/schema.sql")) {
+            schema = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String ddl : schema.replaceAll("(?m)^--.*$", "").split(";")) {
+                if (!ddl.isBlank()) {
+                    stmt.execute(ddl);
+                }
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * Returns another pool for a database already created by open().
+     */
+    static PooledDataSource connect(String name, int poolSize) {
+        String url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        PooledDataSource dataSource = new PooledDataSource(url, "sa", "", poolSize);
+        dataSource.start();
+        return dataSource;
+    }
+
+    /**
+     * @return Product number id of the generated catalog
+     */
+    static Product product(int id, int stock) {
+        String name = ADJECTIVES[id % ADJECTIVES.length] + " "
+                + NOUNS[(id / ADJECTIVES.length) % NOUNS.length] + " " + id;
+        String manufacturer = MANUFACTURERS[id % MANUFACTURERS.length];
+        double price = 1 + (id % 500) + (id % 100) / 100.0;
+        return new Product(id, name, manufacturer, price, stock);
+    }
+
+    /**
+     * Saves products 1..count in chunks, as CatalogImporter does.
+     */
+    static void fill(ProductRepository repository, int count, int stock) {
+        List<Product> chunk = new ArrayList<>(1000);
+        for (int id = 1; id <= count; id++) {
+            chunk.add(product(id, stock));
+            if (chunk.size() == 1000 || id == count) {
+                int stored = repository.saveAll(chunk);
+                if (stored != chunk.size()) {
+                    throw new IllegalStateException("Only " + stored + " of " + chunk.size() + " products saved");
+                }
+                chunk.clear();
+            }
+        }
+    }
+}
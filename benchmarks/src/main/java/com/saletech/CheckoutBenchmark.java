@@ -0,0 +1,84 @@
+package com.saletech;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CheckoutBenchmark
+ *
+ * End-to-end CheckoutService.checkout (stock read, guarded decrements,
+ * sale insert, commit) against an embedded H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    private static final int CATALOG_SIZE = 10_000;
+
+    @Param({ "1", "10", "100" })
+    public int cartLines;
+
+    private PooledDataSource dataSource;
+    // Id blocks are reserved outside the pool checkouts hold, as in SmartSalesApp
+    private PooledDataSource idBlockDataSource;
+    private CheckoutService checkoutService;
+    private Customer customer;
+    private List<CartItem> items;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = BenchmarkDatabase.open("checkout_" + cartLines, 4);
+        idBlockDataSource = BenchmarkDatabase.connect("checkout_" + cartLines, 1);
+
+        DbProductRepository products = new DbProductRepository(dataSource);
+        BenchmarkDatabase.fill(products, CATALOG_SIZE, 1_000_000_000);
+
+        DbCustomerRepository customers =
+                new DbCustomerRepository(dataSource, new IdAllocator(idBlockDataSource, "customers", 10));
+        customer = customers.createOrGetByEmail("Bench Customer", "bench@example.com");
+
+        DbSaleRepository sales = new DbSaleRepository(dataSource, new IdAllocator(idBlockDataSource, "sales", 1000));
+        checkoutService = new CheckoutService(dataSource, products, sales);
+
+        ShoppingCart cart = new ShoppingCart();
+        for (int i = 0; i < cartLines; i++) {
+            int id = 1 + (i * 97) % CATALOG_SIZE;
+            cart.addItem(products.findById(id).orElseThrow(), 1);
+        }
+        items = new ArrayList<>(cart.getItems());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        idBlockDataSource.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Sale checkout() {
+        CheckoutResult result = checkoutService.checkout(customer, items);
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(result.getMessage() + " " + result.getFailures());
+        }
+        return result.getSale();
+    }
+}
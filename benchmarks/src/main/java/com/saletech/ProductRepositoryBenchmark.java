@@ -0,0 +1,100 @@
+package com.saletech;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ProductRepositoryBenchmark
+ *
+ * findById, search, findAll and inventory totals against
+ * InMemoryProductRepository and DbProductRepository (on embedded H2) at
+ * several catalog sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductRepositoryBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int catalogSize;
+
+    @Param({ "memory", "h2" })
+    public String store;
+
+    private ProductRepository repository;
+    private PooledDataSource dataSource;
+
+    private final int[] ids = new int[1024];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (store.equals("h2")) {
+            dataSource = BenchmarkDatabase.open("products_" + catalogSize, 4);
+            repository = new DbProductRepository(dataSource);
+        } else {
+            repository = new InMemoryProductRepository();
+        }
+        BenchmarkDatabase.fill(repository, catalogSize, 100);
+
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1 + random.nextInt(catalogSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Benchmark
+    public Optional<Product> findById() {
+        return repository.findById(ids[next++ & (ids.length - 1)]);
+    }
+
+    @Benchmark
+    public List<Product> search() {
+        String[] terms = BenchmarkDatabase.SEARCH_TERMS;
+        return repository.searchByNameOrManufacturer(terms[next++ % terms.length], 100);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Product> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public InventoryStats inventoryStats() {
+        return repository.getInventoryStats();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public InventoryStats inventoryStatsByStreaming() {
+        // What the inventory report did before aggregation moved into the repository
+        return InventoryStats.of(repository.streamAll().iterator());
+    }
+}
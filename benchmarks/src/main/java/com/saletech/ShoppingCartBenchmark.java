@@ -0,0 +1,76 @@
+package com.saletech;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ShoppingCartBenchmark
+ *
+ * Filling a cart, adding to lines already in a large cart, and reading the total.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShoppingCartBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int lines;
+
+    private Product[] products;
+    private ShoppingCart cart;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createProducts() {
+        products = new Product[lines];
+        for (int i = 0; i < lines; i++) {
+            products[i] = BenchmarkDatabase.product(i + 1, 1_000_000);
+        }
+    }
+
+    /** A fresh full cart per iteration keeps quantities from growing without bound. */
+    @Setup(Level.Iteration)
+    public void fillCart() {
+        cart = new ShoppingCart();
+        for (Product p : products) {
+            cart.addItem(p, 1);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long buildCart() {
+        ShoppingCart fresh = new ShoppingCart();
+        for (Product p : products) {
+            fresh.addItem(p, 1);
+        }
+        return fresh.getTotalCents();
+    }
+
+    @Benchmark
+    public long addExistingAndTotal() {
+        Product p = products[next++ % lines];
+        cart.addItem(p, 1);
+        return cart.getTotalCents();
+    }
+
+    @Benchmark
+    public double total() {
+        return cart.getTotal();
+    }
+}
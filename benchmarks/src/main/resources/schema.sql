@@ -0,0 +1,61 @@
+-- Tables used by the Db*Repository classes, for H2 in MySQL mode
+CREATE TABLE products (
+    id                INT PRIMARY KEY,
+    name              VARCHAR(255) NOT NULL,
+    manufacturer      VARCHAR(255),
+    price             DECIMAL(10, 2) NOT NULL,
+    quantity_in_stock INT NOT NULL
+);
+
+CREATE TABLE customers (
+    id               INT PRIMARY KEY,
+    name             VARCHAR(255) NOT NULL,
+    email            VARCHAR(255) NOT NULL,
+    email_normalized VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE sales (
+    id          INT PRIMARY KEY,
+    customer_id INT NOT NULL,
+    sale_date   TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    total       DECIMAL(12, 2) NOT NULL
+);
+CREATE INDEX idx_sales_date_id ON sales (sale_date, id);
+
+CREATE TABLE sale_lines (
+    id         INT AUTO_INCREMENT PRIMARY KEY,
+    sale_id    INT NOT NULL,
+    product_id INT NOT NULL,
+    quantity   INT NOT NULL,
+    unit_price DECIMAL(10, 2) NOT NULL,
+    line_total DECIMAL(12, 2) NOT NULL
+);
+CREATE INDEX idx_sale_lines_sale_id ON sale_lines (sale_id);
+
+CREATE TABLE id_blocks (
+    name    VARCHAR(64) PRIMARY KEY,
+    next_id INT NOT NULL
+);
+
+CREATE TABLE sales_daily (
+    sale_day   DATE PRIMARY KEY,
+    sale_count INT NOT NULL,
+    units      BIGINT NOT NULL,
+    revenue    DECIMAL(14, 2) NOT NULL
+);
+
+CREATE TABLE sales_by_product (
+    product_id INT PRIMARY KEY,
+    sale_count INT NOT NULL,
+    units      BIGINT NOT NULL,
+    revenue    DECIMAL(14, 2) NOT NULL
+);
+CREATE INDEX idx_sales_by_product_revenue ON sales_by_product (revenue);
+
+CREATE TABLE sales_by_customer (
+    customer_id INT PRIMARY KEY,
+    sale_count  INT NOT NULL,
+    units       BIGINT NOT NULL,
+    revenue     DECIMAL(14, 2) NOT NULL
+);
+CREATE INDEX idx_sales_by_customer_revenue ON sales_by_customer (revenue);
@@ -0,0 +1,198 @@
+package com.saletech;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * AsyncLogHandler
+ *
+ * Hands log records to another Handler (typically a FileHandler) on a
+ * background thread, so the thread that logs never waits for disk I/O.
+ *
+ * Records wait in a bounded ring buffer (an ArrayBlockingQueue). When it is
+ * full the overflow policy decides: DROP discards the new record and counts
+ * it, BLOCK makes the logging thread wait for space. Dropped records are
+ * reported to the target as one WARNING once the writer catches up.
+ *
+ * The caller's class and method are captured before the record is queued,
+ * because the JDK infers them from the stack of the thread that reads them.
+ * close() writes everything still queued and closes the target.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * What publish does when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the record and count it. */
+        DROP,
+        /** Wait until the writer makes room. */
+        BLOCK
+    }
+
+    // Records written per batch before the target is flushed
+    private static final int WRITE_BATCH_SIZE = 256;
+
+    private final Handler target;
+    private final OverflowPolicy policy;
+    private final BlockingQueue<LogRecord> buffer;
+    private final Thread writer;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    // Drops not yet reported to the target; only the writer thread reads it
+    private long droppedReported;
+
+    private volatile boolean closed;
+
+    private AsyncLogHandler(Handler target, int capacity, OverflowPolicy policy) {
+        this.target = target;
+        this.policy = policy;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+
+        this.writer = new Thread(this::writeLoop, "async-log-writer");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Creates a handler at the target's level and starts its writer thread.
+     *
+     * @param target   Handler that does the actual writing; owned by this handler
+     * @param capacity Maximum number of records waiting to be written
+     * @param policy   What to do when capacity is reached
+     */
+    public static AsyncLogHandler start(Handler target, int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        AsyncLogHandler handler = new AsyncLogHandler(target, capacity, policy);
+        handler.setLevel(target.getLevel());
+        handler.writer.start();
+        return handler;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+
+        // Resolve the caller now, on the logging thread
+        record.getSourceClassName();
+
+        if (policy == OverflowPolicy.BLOCK) {
+            try {
+                buffer.put(record);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+                return;
+            }
+        } else if (!buffer.offer(record)) {
+            dropped.increment();
+            return;
+        }
+        published.increment();
+    }
+
+    /**
+     * Waits briefly for queued records to be written, then flushes the target.
+     */
+    @Override
+    public void flush() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!buffer.isEmpty() && writer.isAlive() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+            Thread.yield();
+        }
+        target.flush();
+    }
+
+    /**
+     * Stops accepting records, writes everything still queued and closes the target.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything the writer did not get to
+        List<LogRecord> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        write(rest);
+        target.close();
+    }
+
+    private void writeLoop() {
+        List<LogRecord> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (!closed) {
+            try {
+                LogRecord first = buffer.take();
+                batch.add(first);
+                buffer.drainTo(batch, WRITE_BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                // close() interrupts to stop the loop; it drains the rest itself
+                break;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<LogRecord> records) {
+        reportDrops();
+        for (LogRecord record : records) {
+            try {
+                target.publish(record);
+            } catch (RuntimeException e) {
+                reportError("Async log target failed", e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+        target.flush();
+    }
+
+    private void reportDrops() {
+        long total = dropped.sum();
+        if (total > droppedReported) {
+            LogRecord warning = new LogRecord(Level.WARNING,
+                    (total - droppedReported) + " log records were dropped because the log buffer was full.");
+            warning.setLoggerName(AsyncLogHandler.class.getName());
+            warning.setSourceClassName(AsyncLogHandler.class.getName());
+            warning.setSourceMethodName("publish");
+            target.publish(warning);
+            droppedReported = total;
+        }
+    }
+
+    /** @return Records accepted into the buffer */
+    public long getPublishedCount() { return published.sum(); }
+
+    /** @return Records discarded because the buffer was full */
+    public long getDroppedCount() { return dropped.sum(); }
+
+    /** @return Records waiting to be written */
+    public int getQueueDepth() { return buffer.size(); }
+
+    public OverflowPolicy getPolicy() { return policy; }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncLog[policy=%s, queued=%d, published=%d, dropped=%d]",
+                policy, getQueueDepth(), getPublishedCount(), getDroppedCount());
+    }
+}
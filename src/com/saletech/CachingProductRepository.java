@@ -0,0 +1,365 @@
+package com.saletech;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CachingProductRepository
+ *
+ * Read-through cache that wraps any ProductRepository. findById and findAll
+ * are served from memory while their entries are fresh; everything else is
+ * passed to the wrapped repository.
+ *
+ * The id cache is bounded: once it holds maxEntries products, the least
+ * recently used one is evicted. The findAll snapshot is only kept while the
+ * catalog has at most maxEntries products; larger catalogs are read from
+ * the wrapped repository on every call. Every entry (and the snapshot) also
+ * expires after the configured time to live, so stock changes made outside
+ * this process show up within one TTL.
+ *
+ * save and updateQuantity write through and drop the id from the cache,
+ * whether or not the write succeeded, so the next read loads the stored
+ * row and nothing unstored is ever cached.
+ * updateQuantities replaces the cached products with updated copies when
+ * the batch was applied, so instances already handed out never change.
+ *
+ * Loads run outside the lock. Each one is registered before it starts and
+ * any write or invalidation of that id cancels it, so a load that raced a
+ * change never puts the row it read before the change back in the cache.
+ */
+public class CachingProductRepository implements ProductRepository {
+
+    private final ProductRepository delegate;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // Access-ordered so iteration starts at the least recently used entry.
+    // Guarded by "this".
+    private final LinkedHashMap<Integer, CacheEntry> entries;
+
+    // Snapshot returned by findAll, null when not loaded. Guarded by "this".
+    private List<Product> allProducts;
+    private long allProductsLoadedAt;
+    // Bumped whenever the snapshot is dropped, so an older load is not kept
+    private long allProductsGeneration;
+
+    // Id -> token of the load allowed to cache it. Guarded by "this".
+    private final Map<Integer, Long> pendingLoads = new HashMap<>();
+    private long nextLoadToken;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param delegate   Repository that owns the data
+     * @param maxEntries Maximum number of products kept in the id cache
+     * @param ttl        How long a cached product or findAll snapshot stays fresh
+     */
+    public CachingProductRepository(ProductRepository delegate, int maxEntries, Duration ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CacheEntry> eldest) {
+                if (size() > CachingProductRepository.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public List<Product> findAll() {
+        long generation;
+        synchronized (this) {
+            if (allProducts != null && isFresh(allProductsLoadedAt)) {
+                hits.increment();
+                return new ArrayList<>(allProducts);
+            }
+            generation = allProductsGeneration;
+        }
+
+        misses.increment();
+        List<Product> loaded = delegate.findAll();
+
+        synchronized (this) {
+            // A catalog larger than the id cache is not kept, so memory
+            // stays bounded by maxEntries
+            if (generation == allProductsGeneration && loaded.size() <= maxEntries) {
+                allProducts = new ArrayList<>(loaded);
+                allProductsLoadedAt = System.nanoTime();
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public List<Product> findPage(int afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public InventoryStats getInventoryStats() {
+        return delegate.getInventoryStats();
+    }
+
+    @Override
+    public List<InventoryStats> getInventoryStatsByManufacturer() {
+        return delegate.getInventoryStatsByManufacturer();
+    }
+
+    @Override
+    public Optional<Product> findById(int id) {
+        long token;
+        synchronized (this) {
+            CacheEntry entry = entries.get(id);
+            if (entry != null) {
+                if (isFresh(entry.loadedAt)) {
+                    hits.increment();
+                    return Optional.of(entry.product);
+                }
+                entries.remove(id);
+                evictions.increment();
+            }
+            token = startLoad(id);
+        }
+
+        // Load outside the lock so a slow query does not block other readers
+        misses.increment();
+        Product product = null;
+        try {
+            Optional<Product> loaded = delegate.findById(id);
+            product = loaded.orElse(null);
+            return loaded;
+        } finally {
+            finishLoad(id, token, product);
+        }
+    }
+
+    /**
+     * Serves cached ids from memory and loads all misses with one
+     * delegate.findByIds call.
+     */
+    @Override
+    public Map<Integer, Product> findByIds(Collection<Integer> ids) {
+        Map<Integer, Product> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        Map<Integer, Long> tokens = new HashMap<>();
+
+        synchronized (this) {
+            for (int id : ids) {
+                CacheEntry entry = entries.get(id);
+                if (entry != null && isFresh(entry.loadedAt)) {
+                    hits.increment();
+                    found.put(id, entry.product);
+                } else {
+                    if (entry != null) {
+                        entries.remove(id);
+                        evictions.increment();
+                    }
+                    missing.add(id);
+                    tokens.put(id, startLoad(id));
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            misses.add(missing.size());
+            Map<Integer, Product> loaded = Map.of();
+            try {
+                loaded = delegate.findByIds(missing);
+                found.putAll(loaded);
+            } finally {
+                synchronized (this) {
+                    for (Map.Entry<Integer, Long> e : tokens.entrySet()) {
+                        finishLoad(e.getKey(), e.getValue(), loaded.get(e.getKey()));
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term) {
+        return delegate.searchByNameOrManufacturer(term);
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term, int limit) {
+        return delegate.searchByNameOrManufacturer(term, limit);
+    }
+
+    @Override
+    public void save(Product product) {
+        try {
+            delegate.save(product);
+        } finally {
+            invalidate(product.getId());
+        }
+    }
+
+    /**
+     * Writes through without caching the products, so a bulk import does
+     * not flush the working set out of the LRU.
+     */
+    @Override
+    public int saveAll(List<Product> products) {
+        int stored = delegate.saveAll(products);
+        synchronized (this) {
+            dropSnapshot();
+        }
+        return stored;
+    }
+
+    @Override
+    public void updateQuantity(int id, int newQuantity) {
+        try {
+            delegate.updateQuantity(id, newQuantity);
+        } finally {
+            // A failed update may still have reached the database
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public boolean updateQuantities(Map<Integer, Integer> quantities) {
+        boolean applied = delegate.updateQuantities(quantities);
+        synchronized (this) {
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                pendingLoads.remove(e.getKey());
+                if (applied) {
+                    replaceQuantity(e.getKey(), e.getValue());
+                } else {
+                    // Unknown how much of the batch was applied
+                    entries.remove(e.getKey());
+                }
+            }
+            dropSnapshot();
+        }
+        return applied;
+    }
+
+    /**
+     * Drops one product from the cache. Used after changes that bypass this
+     * repository, such as CheckoutService decrementing stock in SQL.
+     */
+    public synchronized void invalidate(int id) {
+        entries.remove(id);
+        pendingLoads.remove(id);
+        dropSnapshot();
+    }
+
+    /**
+     * Drops every cached product and the findAll snapshot.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        pendingLoads.clear();
+        dropSnapshot();
+    }
+
+    /**
+     * Registers a load of one id; a later startLoad or any change to the id
+     * supersedes it. Caller holds the lock.
+     *
+     * @return Token to pass to finishLoad
+     */
+    private long startLoad(int id) {
+        long token = ++nextLoadToken;
+        pendingLoads.put(id, token);
+        return token;
+    }
+
+    /**
+     * Caches a loaded product unless the load was superseded while it ran.
+     *
+     * @param product The loaded product, or null if none was found or the load failed
+     */
+    private synchronized void finishLoad(int id, long token, Product product) {
+        if (pendingLoads.remove(id, token) && product != null) {
+            entries.put(id, new CacheEntry(product, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Swaps a cached product for a copy with the new stock level. Caller
+     * holds the lock.
+     */
+    private void replaceQuantity(int id, int newQuantity) {
+        CacheEntry entry = entries.get(id);
+        if (entry != null) {
+            Product p = entry.product;
+            Product updated = new Product(p.getId(), p.getName(), p.getManufacturer(), p.getPrice(), newQuantity);
+            entries.put(id, new CacheEntry(updated, entry.loadedAt));
+        }
+    }
+
+    /**
+     * Drops the findAll snapshot and any load of it in progress. Caller
+     * holds the lock.
+     */
+    private void dropSnapshot() {
+        allProducts = null;
+        allProductsGeneration++;
+    }
+
+    private boolean isFresh(long loadedAt) {
+        return System.nanoTime() - loadedAt < ttlNanos;
+    }
+
+    // ----- Metrics -----
+
+    /** @return Lookups answered from the cache */
+    public long getHitCount() { return hits.sum(); }
+
+    /** @return Lookups that had to go to the wrapped repository */
+    public long getMissCount() { return misses.sum(); }
+
+    /** @return Entries removed because the cache was full or the entry expired */
+    public long getEvictionCount() { return evictions.sum(); }
+
+    /** @return Number of products currently in the id cache */
+    public synchronized int size() { return entries.size(); }
+
+    /** @return Fraction of lookups served from memory, 0.0 when there were none */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingProductRepository[size=%d, max=%d, hits=%d, misses=%d, evictions=%d]",
+                size(), maxEntries, getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+    /**
+     * A cached product and the time it was loaded.
+     */
+    private static final class CacheEntry {
+        final Product product;
+        final long loadedAt;
+
+        CacheEntry(Product product, long loadedAt) {
+            this.product = product;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -20,6 +20,12 @@ public class CartItem {
     // Number of units of this product in the cart
     private int quantity;
 
+    // Unit price in whole cents, captured when the item was added
+    private final long unitPriceCents;
+
+    // unitPriceCents * quantity, kept current by every quantity change
+    private long lineTotalCents;
+
     /**
      * Constructs a new CartItem.
      *
@@ -29,6 +35,8 @@ public class CartItem {
     public CartItem(Product product, int quantity) {
         this.product = product;
         this.quantity = quantity;
+        this.unitPriceCents = Math.round(product.getPrice() * 100);
+        this.lineTotalCents = unitPriceCents * quantity;
     }
 
     /** @return Product associated with this cart item */
@@ -44,20 +52,43 @@ public class CartItem {
     /**
      * Increases the quantity of this cart item.
      * Used when the user adds the same product again.
+     * Package-private so only ShoppingCart, which keeps the cart total,
+     * can change quantities.
      *
      * @param amount Number of units to add
+     * @return Change in the line total, in cents
      */
-    public void increment(int amount) {
-        this.quantity += amount;
+    long increment(int amount) {
+        return setQuantity(quantity + amount);
     }
 
     /**
-     * Computes the total price for this item in the cart:
-     * (price per unit) * (quantity)
+     * Replaces the quantity of this cart item.
      *
+     * @param newQuantity New number of units
+     * @return Change in the line total, in cents
+     */
+    long setQuantity(int newQuantity) {
+        long before = lineTotalCents;
+        this.quantity = newQuantity;
+        this.lineTotalCents = unitPriceCents * newQuantity;
+        return lineTotalCents - before;
+    }
+
+    /**
+     * Total price for this item in the cart, (price per unit) * (quantity),
+     * kept as exact whole cents.
+     *
+     * @return Total for this cart line in cents
+     */
+    public long getLineTotalCents() {
+        return lineTotalCents;
+    }
+
+    /**
      * @return Total dollar amount for this cart line
      */
     public double getLineTotal() {
-        return product.getPrice() * quantity;
+        return lineTotalCents / 100.0;
     }
 }
@@ -0,0 +1,549 @@
+package com.saletech;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * CartStore
+ *
+ * Holds one ShoppingCart per session id, for many concurrent shoppers.
+ *
+ * The durable state of every cart is only (product id, quantity) pairs,
+ * kept in a memory-mapped file of fixed-size slots, one slot per session:
+ *
+ *   header: magic, version, slotCount, maxLinesPerCart       (16 bytes)
+ *   slot:   inUse int, lastAccess long, session id length short,
+ *           session id (64 bytes UTF-8), line count int,
+ *           maxLinesPerCart x (productId int, quantity int)
+ *
+ * Every change is written to the mapping straight away, so carts survive a
+ * restart of the application (the OS flushes the pages even if the JVM
+ * dies; close() forces them to disk). Products are not stored: a cart that
+ * is not resident is rebuilt from its slot with one
+ * ProductRepository.findByIds call, at current prices, and lines whose
+ * product no longer exists are dropped. If that call fails the slot is
+ * left as it is and the call that needed the cart fails; the next access
+ * tries again.
+ *
+ * At most maxResident carts are kept on the heap as ShoppingCart objects;
+ * the least recently used ones are dropped and rebuilt on their next
+ * access. Sessions idle longer than idleTimeout are removed by a
+ * background task and their slots reused.
+ *
+ * Each session is locked on its own, so shoppers do not wait for each other.
+ */
+public class CartStore implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(CartStore.class.getName());
+
+    private static final int MAGIC = 0x43415254; // "CART"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    /** Longest session id, in UTF-8 bytes. */
+    public static final int MAX_SESSION_ID_BYTES = 64;
+
+    // Offsets inside a slot
+    private static final int IN_USE = 0;
+    private static final int LAST_ACCESS = 4;
+    private static final int ID_LENGTH = 12;
+    private static final int ID_BYTES = 14;
+    private static final int LINE_COUNT = ID_BYTES + MAX_SESSION_ID_BYTES;
+    private static final int LINES = LINE_COUNT + 4;
+    private static final int LINE_SIZE = 8;
+
+    private final ProductRepository productRepository;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int maxLinesPerCart;
+    private final int slotSize;
+    private final int maxResident;
+    private final long idleTimeoutMillis;
+
+    // Every live session, resident or not
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    // Unused slot numbers, guarded by itself
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    // Sessions whose cart is on the heap, least recently used first; guarded by itself
+    private final LinkedHashMap<String, Session> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ScheduledExecutorService expirer;
+
+    private final LongAdder hydrations = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * Opens the store file, creating it if needed, and loads the session index.
+     *
+     * @param file              Backing file
+     * @param productRepository Used to rebuild carts that are not resident
+     * @param slotCount         Maximum number of sessions
+     * @param maxLinesPerCart   Maximum number of distinct products per cart
+     * @param maxResident       Maximum number of carts kept on the heap
+     * @param idleTimeout       Sessions untouched for this long are removed
+     * @throws IOException if the file cannot be mapped, was created with a
+     *                     different maxLinesPerCart or has more slots than slotCount
+     */
+    public CartStore(Path file, ProductRepository productRepository, int slotCount,
+                     int maxLinesPerCart, int maxResident, Duration idleTimeout) throws IOException {
+        if (slotCount <= 0 || maxLinesPerCart <= 0 || maxResident <= 0) {
+            throw new IllegalArgumentException("slotCount, maxLinesPerCart and maxResident must be > 0");
+        }
+        this.productRepository = productRepository;
+        this.slotCount = slotCount;
+        this.maxLinesPerCart = maxLinesPerCart;
+        this.slotSize = LINES + maxLinesPerCart * LINE_SIZE;
+        this.maxResident = maxResident;
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+
+        long fileSize = HEADER_SIZE + (long) slotCount * slotSize;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cart store would exceed 2 GB; lower slotCount or maxLinesPerCart");
+        }
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, slotCount);
+                buffer.putInt(12, maxLinesPerCart);
+            } else {
+                checkHeader(file);
+            }
+            loadSessions();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        this.expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cart-store-expirer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        LOGGER.info("Cart store " + file + " opened with " + sessions.size() + " saved sessions.");
+    }
+
+    /**
+     * Starts removing sessions idle for longer than idleTimeout.
+     */
+    public void start() {
+        long period = Math.max(1000, idleTimeoutMillis / 4);
+        expirer.scheduleWithFixedDelay(this::expireIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a copy of a session's cart, creating an empty one if needed.
+     * The copy is taken under the session lock, so it is never half-way
+     * through a change and callers can read it as often as they like.
+     * Changing it does not change the stored cart; use addItem,
+     * updateQuantity and remove for that.
+     *
+     * @param sessionId Session id
+     * @return Copy of the session's cart
+     * @throws CartStoreFullException if a new session is needed and every slot is in use
+     * @throws RepositoryException if the cart had to be rebuilt and its products could not be read
+     */
+    public ShoppingCart getCart(String sessionId) {
+        while (true) {
+            Session session = session(sessionId);
+            session.lock.lock();
+            try {
+                if (session.removed) {
+                    continue;
+                }
+                return copyOf(touch(session));
+            } finally {
+                session.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of a session's cart without creating the session, so
+     * looking up unknown session ids does not use up slots.
+     *
+     * @param sessionId Session id
+     * @return Copy of the session's cart, or empty if there is no such session
+     * @throws RepositoryException if the cart had to be rebuilt and its products could not be read
+     */
+    public Optional<ShoppingCart> findCart(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        session.lock.lock();
+        try {
+            if (session.removed) {
+                return Optional.empty();
+            }
+            return Optional.of(copyOf(touch(session)));
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a product to a session's cart and persists the change.
+     *
+     * @param sessionId Session id
+     * @param p         Product being added
+     * @param qty       Quantity to add
+     * @return false if the product is new and the cart already has maxLinesPerCart lines
+     * @throws CartStoreFullException if a new session is needed and every slot is in use
+     */
+    public boolean addItem(String sessionId, Product p, int qty) {
+        while (true) {
+            Session session = session(sessionId);
+            session.lock.lock();
+            try {
+                if (session.removed) {
+                    continue;
+                }
+                ShoppingCart cart = touch(session);
+                if (cart.getItem(p.getId()) == null && cart.getItems().size() >= maxLinesPerCart) {
+                    return false;
+                }
+                cart.addItem(p, qty);
+                writeLines(session.slot, cart);
+                return true;
+            } finally {
+                session.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Sets the quantity of a product in a session's cart; 0 or less removes
+     * it. The change is persisted.
+     *
+     * @return false if the product is not in the cart
+     */
+    public boolean updateQuantity(String sessionId, int productId, int qty) {
+        while (true) {
+            Session session = session(sessionId);
+            session.lock.lock();
+            try {
+                if (session.removed) {
+                    continue;
+                }
+                ShoppingCart cart = touch(session);
+                if (!cart.updateQuantity(productId, qty)) {
+                    return false;
+                }
+                writeLines(session.slot, cart);
+                return true;
+            } finally {
+                session.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes a session and its cart, for example after checkout.
+     *
+     * @param sessionId Session id
+     */
+    public void remove(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            release(session);
+        }
+    }
+
+    /**
+     * Removes every session that has been idle longer than the idle timeout.
+     * Called periodically by the background task.
+     *
+     * @return Number of sessions removed
+     */
+    public int expireIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        int count = 0;
+        for (Session session : sessions.values()) {
+            if (session.lastAccess < cutoff && releaseIfIdle(session, cutoff)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            expired.add(count);
+            LOGGER.fine("Expired " + count + " idle cart sessions.");
+        }
+        return count;
+    }
+
+    /**
+     * Forces pending changes to disk and stops the expiry task.
+     */
+    @Override
+    public void close() throws IOException {
+        expirer.shutdownNow();
+        buffer.force();
+        channel.close();
+    }
+
+    // ----- Sessions -----
+
+    private Session session(String sessionId) {
+        return sessions.computeIfAbsent(sessionId, id -> {
+            byte[] idBytes = encodeSessionId(id);
+            int slot = allocateSlot();
+            int base = offset(slot);
+            buffer.putInt(base + LINE_COUNT, 0);
+            buffer.putShort(base + ID_LENGTH, (short) idBytes.length);
+            buffer.put(base + ID_BYTES, idBytes);
+            buffer.putLong(base + LAST_ACCESS, System.currentTimeMillis());
+            buffer.putInt(base + IN_USE, 1);
+            return new Session(id, slot, System.currentTimeMillis());
+        });
+    }
+
+    /**
+     * Records an access and returns the session's cart, rebuilding it from
+     * its slot if it is not resident. Caller holds the session lock.
+     */
+    private ShoppingCart touch(Session session) {
+        long now = System.currentTimeMillis();
+        session.lastAccess = now;
+        buffer.putLong(offset(session.slot) + LAST_ACCESS, now);
+
+        ShoppingCart cart = session.cart;
+        if (cart == null) {
+            cart = hydrate(session.slot);
+            session.cart = cart;
+        }
+
+        synchronized (resident) {
+            resident.put(session.id, session);
+            Iterator<Session> it = resident.values().iterator();
+            while (resident.size() > maxResident) {
+                // The slot stays the source of truth, so the heap copy can be
+                // dropped without the other session's lock; a caller already
+                // using it keeps its own reference
+                it.next().cart = null;
+                it.remove();
+            }
+        }
+        return cart;
+    }
+
+    private boolean releaseIfIdle(Session session, long cutoff) {
+        session.lock.lock();
+        try {
+            if (session.removed || session.lastAccess >= cutoff) {
+                return false;
+            }
+        } finally {
+            session.lock.unlock();
+        }
+        return release(session);
+    }
+
+    private boolean release(Session session) {
+        session.lock.lock();
+        try {
+            if (session.removed) {
+                return false;
+            }
+            session.removed = true;
+            session.cart = null;
+            sessions.remove(session.id, session);
+            buffer.putInt(offset(session.slot) + IN_USE, 0);
+        } finally {
+            session.lock.unlock();
+        }
+        synchronized (resident) {
+            resident.remove(session.id, session);
+        }
+        synchronized (freeSlots) {
+            freeSlots.push(session.slot);
+        }
+        return true;
+    }
+
+    private int allocateSlot() {
+        synchronized (freeSlots) {
+            Integer slot = freeSlots.poll();
+            if (slot == null) {
+                throw new CartStoreFullException("Cart store is full (" + slotCount + " sessions).");
+            }
+            return slot;
+        }
+    }
+
+    // ----- Slot encoding -----
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private void writeLines(int slot, ShoppingCart cart) {
+        int base = offset(slot);
+        int pos = base + LINES;
+        for (CartItem item : cart.getItems()) {
+            buffer.putInt(pos, item.getProduct().getId());
+            buffer.putInt(pos + 4, item.getQuantity());
+            pos += LINE_SIZE;
+        }
+        // The count goes last so a torn write never exposes unwritten lines
+        buffer.putInt(base + LINE_COUNT, cart.getItems().size());
+    }
+
+    private static ShoppingCart copyOf(ShoppingCart cart) {
+        ShoppingCart copy = new ShoppingCart();
+        for (CartItem item : cart.getItems()) {
+            copy.addItem(item.getProduct(), item.getQuantity());
+        }
+        return copy;
+    }
+
+    /**
+     * Rebuilds a cart from its slot. Caller holds the session lock.
+     *
+     * @throws RepositoryException if the products cannot be read; the slot is not changed
+     */
+    private ShoppingCart hydrate(int slot) {
+        int base = offset(slot);
+        int count = Math.min(buffer.getInt(base + LINE_COUNT), maxLinesPerCart);
+
+        int[] productIds = new int[count];
+        int[] quantities = new int[count];
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int pos = base + LINES + i * LINE_SIZE;
+            productIds[i] = buffer.getInt(pos);
+            quantities[i] = buffer.getInt(pos + 4);
+            ids.add(productIds[i]);
+        }
+
+        ShoppingCart cart = new ShoppingCart();
+        if (count > 0) {
+            // Throws rather than returning an empty map on failure, so the
+            // slot is only rewritten once products are known to be gone
+            Map<Integer, Product> products = productRepository.findByIds(ids);
+            for (int i = 0; i < count; i++) {
+                Product p = products.get(productIds[i]);
+                if (p != null && quantities[i] > 0) {
+                    cart.addItem(p, quantities[i]);
+                }
+            }
+            if (cart.getItems().size() != count) {
+                writeLines(slot, cart);
+            }
+        }
+
+        hydrations.increment();
+        return cart;
+    }
+
+    private void checkHeader(Path file) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a cart store file.");
+        }
+        if (buffer.getInt(8) > slotCount || buffer.getInt(12) != maxLinesPerCart) {
+            throw new IOException(file + " was created with slotCount=" + buffer.getInt(8)
+                    + " and maxLinesPerCart=" + buffer.getInt(12));
+        }
+        // Slots are laid out one after another, so a larger slotCount just
+        // appends empty ones (the mapping has already grown the file)
+        buffer.putInt(8, slotCount);
+    }
+
+    private void loadSessions() {
+        for (int slot = slotCount - 1; slot >= 0; slot--) {
+            int base = offset(slot);
+            if (buffer.getInt(base + IN_USE) == 0) {
+                freeSlots.push(slot);
+                continue;
+            }
+            byte[] idBytes = new byte[buffer.getShort(base + ID_LENGTH)];
+            buffer.get(base + ID_BYTES, idBytes);
+            String id = new String(idBytes, StandardCharsets.UTF_8);
+            sessions.put(id, new Session(id, slot, buffer.getLong(base + LAST_ACCESS)));
+        }
+    }
+
+    private static byte[] encodeSessionId(String sessionId) {
+        byte[] bytes = sessionId.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_SESSION_ID_BYTES) {
+            throw new IllegalArgumentException(
+                    "Session id must be 1-" + MAX_SESSION_ID_BYTES + " bytes: " + sessionId);
+        }
+        return bytes;
+    }
+
+    // ----- Metrics -----
+
+    /** @return Number of live sessions */
+    public int getSessionCount() { return sessions.size(); }
+
+    /** @return Number of carts currently on the heap */
+    public int getResidentCount() {
+        synchronized (resident) {
+            return resident.size();
+        }
+    }
+
+    /** @return Number of carts rebuilt from the file */
+    public long getHydrationCount() { return hydrations.sum(); }
+
+    /** @return Number of sessions removed for being idle */
+    public long getExpiredCount() { return expired.sum(); }
+
+    @Override
+    public String toString() {
+        return String.format("CartStore[sessions=%d/%d, resident=%d/%d, hydrations=%d, expired=%d]",
+                getSessionCount(), slotCount, getResidentCount(), maxResident,
+                getHydrationCount(), getExpiredCount());
+    }
+
+    /**
+     * One session's slot and, while resident, its cart.
+     * Changes to the cart and to removed are made holding the session lock.
+     * It is a ReentrantLock rather than the Session monitor because
+     * rebuilding a cart reads products from the database, and a virtual
+     * thread blocked in JDBC inside synchronized would pin its carrier.
+     */
+    private static final class Session {
+        final ReentrantLock lock = new ReentrantLock();
+        final String id;
+        final int slot;
+        volatile long lastAccess;
+        volatile ShoppingCart cart;
+        boolean removed;
+
+        Session(String id, int slot, long lastAccess) {
+            this.id = id;
+            this.slot = slot;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
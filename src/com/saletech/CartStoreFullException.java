@@ -0,0 +1,17 @@
+package com.saletech;
+
+/**
+ * CartStoreFullException
+ *
+ * Thrown by CartStore when a new session is needed and every slot is in
+ * use. SalesHttpServer answers it with 503, so a full store is told apart
+ * from other IllegalStateExceptions, which are bugs.
+ */
+public class CartStoreFullException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CartStoreFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,353 @@
+package com.saletech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * CatalogImporter
+ *
+ * Streams a product CSV file into any ProductRepository in chunks.
+ *
+ * Expected columns, one product per line, optional header line:
+ *
+ *   id,name,manufacturer,price,quantity_in_stock
+ *
+ * Name and manufacturer may be wrapped in double quotes (with "" for a
+ * literal quote) so they can contain commas. Line breaks inside a field are
+ * not supported.
+ *
+ * The file is read through a FileChannel into one reusable buffer and each
+ * line is parsed in place: numbers are decoded straight from the bytes, so
+ * the only Strings created per row are the name and manufacturer. Parsed
+ * products are handed to ProductRepository.saveAll chunkSize at a time,
+ * which DbProductRepository writes as one JDBC batch per transaction.
+ */
+public class CatalogImporter {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(CatalogImporter.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9
+    };
+
+    private final ProductRepository repository;
+    private final int chunkSize;
+
+    /**
+     * @param repository Destination repository
+     * @param chunkSize  Number of products passed to saveAll at once
+     */
+    public CatalogImporter(ProductRepository repository, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        }
+        this.repository = repository;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports every product in the file.
+     *
+     * @param file CSV file to read
+     * @return Counts, throughput and rejected rows
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult importCsv(Path file) throws IOException {
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+
+        Chunk chunk = new Chunk(chunkSize);
+        long lineNumber = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            boolean eof = false;
+
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+
+                byte[] bytes = buffer.array();
+                int limit = buffer.limit();
+                int lineStart = 0;
+
+                for (int i = 0; i < limit; i++) {
+                    if (bytes[i] == '\n') {
+                        handleLine(bytes, lineStart, i, ++lineNumber, chunk, result);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < limit) {
+                    handleLine(bytes, lineStart, limit, ++lineNumber, chunk, result);
+                    lineStart = limit;
+                }
+
+                // Keep the partial last line for the next read
+                buffer.position(lineStart);
+                buffer.compact();
+
+                if (!eof && !buffer.hasRemaining()) {
+                    // A single line is longer than the buffer
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+        }
+
+        flush(chunk, result);
+        result.finished(System.nanoTime() - start);
+
+        LOGGER.info("Catalog import of " + file + " finished: " + result);
+        return result;
+    }
+
+    private void handleLine(byte[] bytes, int start, int end, long lineNumber,
+                            Chunk chunk, ImportResult result) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+        if (lineNumber == 1 && !isNumberStart(bytes[start])) {
+            return; // header
+        }
+
+        result.rowRead();
+
+        try {
+            Cursor cursor = new Cursor(bytes, start, end);
+            int id = parseInt(cursor);
+            String name = parseText(cursor);
+            String manufacturer = parseText(cursor);
+            double price = parseDecimal(cursor);
+            int qty = parseInt(cursor);
+
+            if (cursor.pos <= end) {
+                throw new IllegalArgumentException("too many columns");
+            }
+            if (id <= 0) {
+                throw new IllegalArgumentException("id must be > 0");
+            }
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("name is required");
+            }
+            if (price < 0 || qty < 0) {
+                throw new IllegalArgumentException("price and quantity must be >= 0");
+            }
+
+            chunk.add(new Product(id, name, manufacturer, price, qty), lineNumber);
+            if (chunk.products.size() >= chunkSize) {
+                flush(chunk, result);
+            }
+
+        } catch (IllegalArgumentException e) {
+            result.rejected("Line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    private void flush(Chunk chunk, ImportResult result) {
+        if (chunk.products.isEmpty()) {
+            return;
+        }
+
+        int stored = repository.saveAll(chunk.products);
+        result.imported(stored);
+
+        int failed = chunk.products.size() - stored;
+        if (failed > 0) {
+            result.rejected(failed, "Lines " + chunk.firstLine + "-" + chunk.lastLine + ": "
+                    + failed + " rows were rejected by the repository");
+        }
+
+        chunk.clear();
+    }
+
+    private static boolean isNumberStart(byte b) {
+        return (b >= '0' && b <= '9') || b == '-';
+    }
+
+    /**
+     * Parses a whole number field that must fit in an int and moves past
+     * its comma.
+     */
+    private static int parseInt(Cursor c) {
+        int fieldEnd = c.fieldEnd();
+        int i = c.pos;
+        boolean negative = i < fieldEnd && c.bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == fieldEnd) {
+            throw new IllegalArgumentException("expected a number in column " + c.column);
+        }
+
+        // Checked after every digit, so value never gets near overflowing a long
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < fieldEnd; i++) {
+            int digit = c.bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("invalid number in column " + c.column);
+            }
+            value = value * 10 + digit;
+            if (value > limit) {
+                throw new IllegalArgumentException("number out of range in column " + c.column);
+            }
+        }
+
+        c.next(fieldEnd);
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Parses a decimal field such as 19.99 and moves past its comma.
+     */
+    private static double parseDecimal(Cursor c) {
+        int fieldEnd = c.fieldEnd();
+        int i = c.pos;
+        boolean negative = i < fieldEnd && c.bytes[i] == '-';
+        if (negative) {
+            i++;
+        }
+
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        for (; i < fieldEnd; i++) {
+            byte b = c.bytes[i];
+            if (b == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || digits >= 18) {
+                throw new IllegalArgumentException("invalid decimal in column " + c.column);
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0 || scale >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("invalid decimal in column " + c.column);
+        }
+
+        c.next(fieldEnd);
+        double value = (scale <= 0) ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a plain or double-quoted text field and moves past its comma.
+     */
+    private static String parseText(Cursor c) {
+        if (c.pos < c.end && c.bytes[c.pos] == '"') {
+            int i = c.pos + 1;
+            boolean escapedQuotes = false;
+            while (true) {
+                if (i >= c.end) {
+                    throw new IllegalArgumentException("unterminated quote in column " + c.column);
+                }
+                if (c.bytes[i] == '"') {
+                    if (i + 1 < c.end && c.bytes[i + 1] == '"') {
+                        escapedQuotes = true;
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                i++;
+            }
+
+            String text = new String(c.bytes, c.pos + 1, i - c.pos - 1, StandardCharsets.UTF_8);
+            if (escapedQuotes) {
+                text = text.replace("\"\"", "\"");
+            }
+
+            int after = i + 1;
+            if (after < c.end && c.bytes[after] != ',') {
+                throw new IllegalArgumentException("unexpected text after quote in column " + c.column);
+            }
+            c.next(after);
+            return text;
+        }
+
+        int fieldEnd = c.fieldEnd();
+        String text = new String(c.bytes, c.pos, fieldEnd - c.pos, StandardCharsets.UTF_8);
+        c.next(fieldEnd);
+        return text;
+    }
+
+    /**
+     * Read position inside one line.
+     */
+    private static final class Cursor {
+        final byte[] bytes;
+        final int end;
+        int pos;
+        int column = 1;
+
+        Cursor(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.pos = start;
+            this.end = end;
+        }
+
+        /** @return Index of the comma ending the current field, or the line end */
+        int fieldEnd() {
+            if (pos > end) {
+                throw new IllegalArgumentException("missing column " + column);
+            }
+            int i = pos;
+            while (i < end && bytes[i] != ',') {
+                i++;
+            }
+            return i;
+        }
+
+        /** Moves past the field that ends at fieldEnd and its comma. */
+        void next(int fieldEnd) {
+            pos = fieldEnd + 1;
+            column++;
+        }
+    }
+
+    /**
+     * Products waiting to be saved and the lines they came from.
+     */
+    private static final class Chunk {
+        final List<Product> products;
+        long firstLine;
+        long lastLine;
+
+        Chunk(int capacity) {
+            this.products = new ArrayList<>(capacity);
+        }
+
+        void add(Product product, long lineNumber) {
+            if (products.isEmpty()) {
+                firstLine = lineNumber;
+            }
+            lastLine = lineNumber;
+            products.add(product);
+        }
+
+        void clear() {
+            products.clear();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.saletech;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CheckoutResult
+ *
+ * Outcome of a CheckoutService.checkout call. A successful result carries
+ * the saved Sale. A failed result carries a message and, when the failure
+ * was caused by inventory, one Failure entry per SKU that could not be sold.
+ */
+public class CheckoutResult {
+
+    private final Sale sale;
+    private final String message;
+    private final List<Failure> failures;
+
+    private CheckoutResult(Sale sale, String message, List<Failure> failures) {
+        this.sale = sale;
+        this.message = message;
+        this.failures = failures;
+    }
+
+    /** Creates a successful result for the saved sale. */
+    public static CheckoutResult success(Sale sale) {
+        return new CheckoutResult(sale, "Checkout complete.", Collections.emptyList());
+    }
+
+    /** Creates a failed result listing the SKUs that could not be sold. */
+    public static CheckoutResult failed(String message, List<Failure> failures) {
+        return new CheckoutResult(null, message, Collections.unmodifiableList(failures));
+    }
+
+    /** Creates a failed result that is not tied to a particular SKU. */
+    public static CheckoutResult failed(String message) {
+        return failed(message, Collections.emptyList());
+    }
+
+    public boolean isSuccess() { return sale != null; }
+
+    /** @return The saved sale, or null if checkout failed */
+    public Sale getSale() { return sale; }
+
+    public String getMessage() { return message; }
+
+    /** @return SKUs that failed stock validation (empty on success) */
+    public List<Failure> getFailures() { return failures; }
+
+    /**
+     * Failure
+     *
+     * A single SKU that could not be sold in the requested quantity.
+     */
+    public static class Failure {
+
+        private final int productId;
+        private final String productName;
+        private final int requested;
+        private final int available;
+
+        public Failure(int productId, String productName, int requested, int available) {
+            this.productId = productId;
+            this.productName = productName;
+            this.requested = requested;
+            this.available = available;
+        }
+
+        public int getProductId() { return productId; }
+
+        /** @return Product name, or null if the product no longer exists */
+        public String getProductName() { return productName; }
+
+        public int getRequested() { return requested; }
+
+        public int getAvailable() { return available; }
+
+        @Override
+        public String toString() {
+            String label = (productName == null) ? "Product missing" : productName;
+            return label + " (id " + productId + ") Requested: " + requested + " Available: " + available;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.saletech;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * CheckoutService
+ *
+ * Turns the contents of a shopping cart into a persisted Sale inside a
+ * single database transaction:
+ *
+ *   1. DbProductRepository.findByIds loads current price and stock for every
+ *      SKU in the cart with one IN query per 500 SKUs,
+ *   2. one batch of guarded UPDATEs decrements stock only where
+ *      quantity_in_stock is still large enough,
+ *   3. the sales and sale_lines rows are inserted,
+ *   4. the transaction commits.
+ *
+ * If any SKU is missing or short on stock, nothing is written and the
+ * result lists exactly which SKUs failed. Because each decrement is
+ * conditional, two shoppers racing for the last units can never oversell.
+ *
+ * With a StockLedger, checkout(sessionId, ...) first tops up the session's
+ * reservations and fails without touching the database if the ledger
+ * already knows stock is short; a successful sale then converts the
+ * reservations into decrements.
+ *
+ * Committed sales are reported to the product repository's StockListeners
+ * (see DbProductRepository.addStockListener).
+ */
+public class CheckoutService {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(CheckoutService.class.getName());
+
+    private final DataSource dataSource;
+    private final DbProductRepository productRepository;
+    private final DbSaleRepository saleRepository;
+    private final StockLedger stockLedger;
+
+    /**
+     * @param dataSource        Source of pooled connections
+     * @param productRepository Used to load cart products on the checkout connection
+     * @param saleRepository    Used to insert the sale on the checkout connection
+     */
+    public CheckoutService(DataSource dataSource, DbProductRepository productRepository,
+                           DbSaleRepository saleRepository) {
+        this(dataSource, productRepository, saleRepository, null);
+    }
+
+    /**
+     * @param stockLedger Reservations to check and convert, or null for none
+     */
+    public CheckoutService(DataSource dataSource, DbProductRepository productRepository,
+                           DbSaleRepository saleRepository, StockLedger stockLedger) {
+        this.dataSource = dataSource;
+        this.productRepository = productRepository;
+        this.saleRepository = saleRepository;
+        this.stockLedger = stockLedger;
+    }
+
+    /**
+     * Checks out a session's cart against its stock reservations, then
+     * runs the database checkout.
+     *
+     * @param sessionId Session that reserved the cart's stock
+     * @param customer  Customer with a database id
+     * @param items     Cart contents to sell
+     * @return Result holding the saved sale, or the reason checkout failed
+     */
+    public CheckoutResult checkout(String sessionId, Customer customer, List<CartItem> items) {
+        if (stockLedger == null || items == null || items.isEmpty()) {
+            return checkout(customer, items);
+        }
+
+        List<CheckoutResult.Failure> failures = stockLedger.reserveAll(sessionId, items);
+        if (!failures.isEmpty()) {
+            return CheckoutResult.failed("Not enough stock.", failures);
+        }
+
+        CheckoutResult result = checkout(customer, items);
+        if (result.isSuccess()) {
+            stockLedger.commit(sessionId, result.getSale());
+        }
+        return result;
+    }
+
+    /**
+     * Validates stock, decrements inventory and saves the sale atomically.
+     *
+     * @param customer Customer with a database id
+     * @param items    Cart contents to sell
+     * @return Result holding the saved sale, or the reason checkout failed
+     */
+    public CheckoutResult checkout(Customer customer, List<CartItem> items) {
+        if (customer == null || customer.getId() <= 0) {
+            return CheckoutResult.failed("A saved customer is required.");
+        }
+        if (items == null || items.isEmpty()) {
+            return CheckoutResult.failed("Cart empty.");
+        }
+
+        // Requested quantity per product id, in cart order
+        Map<Integer, Integer> requested = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            requested.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                Map<Integer, Product> fresh = productRepository.findByIds(conn, requested.keySet());
+
+                List<CheckoutResult.Failure> failures = validateStock(requested, fresh);
+                if (failures.isEmpty()) {
+                    failures = decrementStock(conn, requested, fresh);
+                }
+                if (!failures.isEmpty()) {
+                    conn.rollback();
+                    return CheckoutResult.failed("Not enough stock.", failures);
+                }
+
+                Sale sale = new Sale(customer);
+                for (Map.Entry<Integer, Integer> entry : requested.entrySet()) {
+                    Product p = fresh.get(entry.getKey());
+                    int qty = entry.getValue();
+                    p.setQuantityInStock(p.getQuantityInStock() - qty);
+                    sale.addLine(p, qty, p.getPrice());
+                }
+
+                int saleId = saleRepository.insert(conn, sale);
+                conn.commit();
+
+                sale.setId(saleId);
+                productRepository.notifySold(requested);
+                return CheckoutResult.success(sale);
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Checkout failed for customer id " + customer.getId(), e);
+            return CheckoutResult.failed("Database error during checkout.");
+        }
+    }
+
+    /**
+     * Checks every SKU against the freshly loaded stock levels.
+     */
+    private List<CheckoutResult.Failure> validateStock(Map<Integer, Integer> requested,
+                                                       Map<Integer, Product> fresh) {
+        List<CheckoutResult.Failure> failures = new ArrayList<>();
+
+        for (Map.Entry<Integer, Integer> entry : requested.entrySet()) {
+            Product p = fresh.get(entry.getKey());
+            if (p == null) {
+                failures.add(new CheckoutResult.Failure(entry.getKey(), null, entry.getValue(), 0));
+            } else if (entry.getValue() > p.getQuantityInStock()) {
+                failures.add(new CheckoutResult.Failure(
+                        p.getId(), p.getName(), entry.getValue(), p.getQuantityInStock()));
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Decrements stock in one batch. Each UPDATE only applies if enough stock
+     * is still available, so a row count of 0 means another checkout took the
+     * units after they were read. Rows are updated in id order so concurrent
+     * checkouts lock them in the same order and cannot deadlock.
+     */
+    private List<CheckoutResult.Failure> decrementStock(Connection conn,
+                                                        Map<Integer, Integer> requested,
+                                                        Map<Integer, Product> fresh)
+            throws SQLException {
+        String sql = "UPDATE products SET quantity_in_stock = quantity_in_stock - ? " +
+                     "WHERE id = ? AND quantity_in_stock >= ?";
+
+        List<Integer> order = new ArrayList<>(new TreeMap<>(requested).keySet());
+        List<CheckoutResult.Failure> failures = new ArrayList<>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int productId : order) {
+                int qty = requested.get(productId);
+                stmt.setInt(1, qty);
+                stmt.setInt(2, productId);
+                stmt.setInt(3, qty);
+                stmt.addBatch();
+            }
+
+            int[] counts = stmt.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    Product p = fresh.get(order.get(i));
+                    failures.add(new CheckoutResult.Failure(
+                            p.getId(), p.getName(), requested.get(p.getId()), p.getQuantityInStock()));
+                }
+            }
+        }
+
+        return failures;
+    }
+}
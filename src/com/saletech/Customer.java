@@ -1,5 +1,7 @@
 package com.saletech;
 
+import java.util.Locale;
+
 /**
  * Customer
  *
@@ -39,6 +41,17 @@ public class Customer {
 
     public String getEmail() { return email; }
 
+    /**
+     * Canonical form of an email address used for lookups and the unique key:
+     * surrounding whitespace removed and lower-cased.
+     *
+     * @param email Email as typed by the user
+     * @return Normalized email
+     */
+    public static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
  // Used for debugging and report output
     @Override
     public String toString() {
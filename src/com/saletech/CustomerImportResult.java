@@ -0,0 +1,26 @@
+package com.saletech;
+
+import java.util.Arrays;
+
+/**
+ * CustomerImportResult
+ *
+ * ImportResult for CustomerImporter, adding the resolved customer id of
+ * every input record in input order.
+ */
+public class CustomerImportResult extends ImportResult {
+
+    private int[] customerIds = new int[0];
+
+    void setCustomerIds(int[] customerIds) {
+        this.customerIds = customerIds;
+    }
+
+    /**
+     * @return One customer id per input record, in input order;
+     *         0 where the record was rejected
+     */
+    public int[] getCustomerIds() {
+        return Arrays.copyOf(customerIds, customerIds.length);
+    }
+}
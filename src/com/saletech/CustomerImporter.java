@@ -0,0 +1,154 @@
+package com.saletech;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * CustomerImporter
+ *
+ * Bulk-loads (name, email) records through CustomerRepository.createOrGetAllByEmail.
+ *
+ * Emails are deduplicated in memory on their normalized form, so each
+ * distinct email reaches the database once no matter how often it appears
+ * in the input. Distinct emails are sent batchSize at a time, which
+ * DbCustomerRepository turns into one batched upsert per transaction.
+ *
+ * The result holds the resolved customer id for every input record, in
+ * input order. Memory grows with the number of distinct emails (the dedupe
+ * map) and the number of records (one int each), never with row objects.
+ */
+public class CustomerImporter {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(CustomerImporter.class.getName());
+
+    private final CustomerRepository repository;
+    private final int batchSize;
+
+    /**
+     * @param repository Destination repository
+     * @param batchSize  Number of distinct emails upserted per batch
+     */
+    public CustomerImporter(CustomerRepository repository, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        this.repository = repository;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports every record in the stream.
+     *
+     * @param records Unsaved customers; only name and email are used
+     * @return Counts, throughput, errors and the resolved ids in input order
+     */
+    public CustomerImportResult importAll(Stream<Customer> records) {
+        CustomerImportResult result = new CustomerImportResult();
+        long start = System.nanoTime();
+
+        // Normalized email -> resolved id, across the whole import
+        Map<String, Integer> resolvedIds = new HashMap<>();
+
+        // Distinct emails waiting for the next batch, and the record
+        // positions that are waiting on each of them
+        Map<String, Customer> pending = new LinkedHashMap<>();
+        Map<String, List<Integer>> waiting = new HashMap<>();
+
+        int[] ids = new int[1024];
+        int position = 0;
+
+        Iterator<Customer> it = records.iterator();
+        while (it.hasNext()) {
+            Customer record = it.next();
+            result.rowRead();
+
+            if (position == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            int current = position++;
+
+            String error = validate(record);
+            if (error != null) {
+                result.rejected("Record " + (current + 1) + ": " + error);
+                continue;
+            }
+
+            String normalized = Customer.normalizeEmail(record.getEmail());
+            Integer known = resolvedIds.get(normalized);
+            if (known != null) {
+                ids[current] = known;
+                result.imported(1);
+                continue;
+            }
+
+            pending.putIfAbsent(normalized, record);
+            waiting.computeIfAbsent(normalized, k -> new ArrayList<>(1)).add(current);
+
+            if (pending.size() >= batchSize) {
+                flush(pending, waiting, resolvedIds, ids, result);
+            }
+        }
+        flush(pending, waiting, resolvedIds, ids, result);
+
+        result.setCustomerIds(Arrays.copyOf(ids, position));
+        result.finished(System.nanoTime() - start);
+
+        LOGGER.info("Customer import finished: " + result);
+        return result;
+    }
+
+    private void flush(Map<String, Customer> pending, Map<String, List<Integer>> waiting,
+                       Map<String, Integer> resolvedIds, int[] ids, CustomerImportResult result) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<String> emails = new ArrayList<>(pending.keySet());
+        List<Customer> saved = repository.createOrGetAllByEmail(new ArrayList<>(pending.values()));
+
+        for (int i = 0; i < emails.size(); i++) {
+            String normalized = emails.get(i);
+            int id = saved.get(i).getId();
+            List<Integer> positions = waiting.get(normalized);
+
+            if (id > 0) {
+                resolvedIds.put(normalized, id);
+                for (int p : positions) {
+                    ids[p] = id;
+                }
+                result.imported(positions.size());
+            } else {
+                for (int p : positions) {
+                    result.rejected("Record " + (p + 1) + ": could not be saved (" + normalized + ")");
+                }
+            }
+        }
+
+        pending.clear();
+        waiting.clear();
+    }
+
+    /**
+     * @return A reason the record cannot be imported, or null if it is valid
+     */
+    private static String validate(Customer record) {
+        if (record.getName() == null || record.getName().isBlank()) {
+            return "name is required";
+        }
+        if (record.getEmail() == null || record.getEmail().isBlank()) {
+            return "email is required";
+        }
+        if (record.getEmail().indexOf('@') < 1) {
+            return "email is not valid";
+        }
+        return null;
+    }
+}
@@ -1,12 +1,15 @@
 package com.saletech;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * CustomerRepository
  *
  * Abstraction for customer persistence.
+ * Reads throw RepositoryException when the store cannot be read.
  */
 public interface CustomerRepository {
 
@@ -14,11 +17,50 @@ public interface CustomerRepository {
 
     Optional<Customer> findByEmail(String email);
 
+    /**
+     * Page size used by streamAll.
+     */
+    int STREAM_PAGE_SIZE = 500;
+
     List<Customer> findAll();
 
+    /**
+     * Returns one page of customers ordered by id (keyset pagination).
+     * Pass 0 for the first page and the last id of the previous page after that.
+     *
+     * @throws RepositoryException if the page cannot be read
+     */
+    List<Customer> findPage(int afterId, int limit);
+
+    /**
+     * Streams every customer ordered by id, one page at a time, so memory
+     * use stays constant no matter how many customers exist.
+     */
+    default Stream<Customer> streamAll() {
+        return KeysetPager.stream(STREAM_PAGE_SIZE,
+                last -> findPage(last == null ? 0 : last.getId(), STREAM_PAGE_SIZE));
+    }
+
     /**
      * Creates the customer if it does not exist.
      * If a customer with the same email exists, returns the existing record.
      */
     Customer createOrGetByEmail(String name, String email);
+
+    /**
+     * Bulk form of createOrGetByEmail used by CustomerImporter. The input
+     * should not contain the same normalized email twice.
+     * The default resolves one customer at a time; implementations may batch.
+     *
+     * @param customers Unsaved customers (name and email)
+     * @return Resolved customers in input order; an entry keeps id 0 if it
+     *         could not be saved
+     */
+    default List<Customer> createOrGetAllByEmail(List<Customer> customers) {
+        List<Customer> resolved = new ArrayList<>(customers.size());
+        for (Customer c : customers) {
+            resolved.add(createOrGetByEmail(c.getName(), c.getEmail()));
+        }
+        return resolved;
+    }
 }
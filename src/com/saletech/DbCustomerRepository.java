@@ -2,29 +2,58 @@ package com.saletech;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 /**
  * DbCustomerRepository
  *
  * JDBC backed customer repository.
  * Uses the customers table.
+ *
+ * Emails are matched on the email_normalized column (see
+ * Customer.normalizeEmail), which carries a unique key so lookups use the
+ * index and concurrent checkouts cannot create duplicate customers:
+ *
+ *   ALTER TABLE customers ADD COLUMN email_normalized VARCHAR(255) NOT NULL DEFAULT '';
+ *   UPDATE customers SET email_normalized = LOWER(TRIM(email));
+ *   ALTER TABLE customers ADD UNIQUE KEY uk_customers_email_normalized (email_normalized);
  */
 public class DbCustomerRepository implements CustomerRepository {
 
     private static final Logger LOGGER =
             Logger.getLogger(DbCustomerRepository.class.getName());
 
-    // Keep these consistent with DbProductRepository
-    private static final String URL = "jdbc:mysql://localhost:3306/saletech";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
+    // Maximum number of values in one IN (...) lookup
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO customers (id, name, email, email_normalized) VALUES (?, ?, ?, ?)";
+
+    // Shared connection pool (see PooledDataSource)
+    private final DataSource dataSource;
+
+    // Assigns customer ids before INSERT
+    private final IdAllocator idAllocator;
+
+    /**
+     * @param dataSource  Source of pooled connections shared by all repositories
+     * @param idAllocator Block allocator for customer ids
+     */
+    public DbCustomerRepository(DataSource dataSource, IdAllocator idAllocator) {
+        this.dataSource = dataSource;
+        this.idAllocator = idAllocator;
+    }
 
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return dataSource.getConnection();
     }
 
     private Customer mapRow(ResultSet rs) throws SQLException {
@@ -50,7 +79,7 @@ public class DbCustomerRepository implements CustomerRepository {
             }
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error finding customer by id " + id, e);
+            throw new RepositoryException("Error finding customer by id " + id, e);
         }
 
         return Optional.empty();
@@ -58,21 +87,25 @@ public class DbCustomerRepository implements CustomerRepository {
 
     @Override
     public Optional<Customer> findByEmail(String email) {
-        String sql = "SELECT id, name, email FROM customers WHERE LOWER(email) = LOWER(?)";
+        try (Connection conn = getConnection()) {
+            return findByNormalizedEmail(conn, Customer.normalizeEmail(email));
+        } catch (SQLException e) {
+            throw new RepositoryException("Error finding customer by email " + email, e);
+        }
+    }
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    private Optional<Customer> findByNormalizedEmail(Connection conn, String normalizedEmail)
+            throws SQLException {
+        String sql = "SELECT id, name, email FROM customers WHERE email_normalized = ?";
 
-            stmt.setString(1, email);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, normalizedEmail);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return Optional.of(mapRow(rs));
                 }
             }
-
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error finding customer by email " + email, e);
         }
 
         return Optional.empty();
@@ -92,41 +125,234 @@ public class DbCustomerRepository implements CustomerRepository {
             }
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching all customers", e);
+            throw new RepositoryException("Error fetching all customers", e);
         }
 
         return customers;
     }
 
+    @Override
+    public List<Customer> findPage(int afterId, int limit) {
+        List<Customer> customers = new ArrayList<>(Math.min(limit, STREAM_PAGE_SIZE));
+        String sql = "SELECT id, name, email FROM customers WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, limit);
+            stmt.setFetchSize(limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    customers.add(mapRow(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            // An empty page would end streamAll early, so callers must see the failure
+            throw new RepositoryException("Error fetching customer page after id " + afterId, e);
+        }
+
+        return customers;
+    }
+
+    /**
+     * Looks the email up on email_normalized first, so an existing customer
+     * costs one round trip. A new one is then inserted under a pre-allocated
+     * id with a plain INSERT, whose row count and errors mean the same
+     * whatever flags the JDBC url sets. If another session registered the
+     * email in between, the unique key rejects the insert and the stored row
+     * is read instead, so two concurrent checkouts for the same email still
+     * resolve to the same customer.
+     *
+     * @throws RepositoryException if the pre-allocated id is already taken,
+     *         which means the id allocator is behind the customers table
+     */
     @Override
     public Customer createOrGetByEmail(String name, String email) {
-        // Try read first
-        Optional<Customer> existing = findByEmail(email);
+        String normalized = Customer.normalizeEmail(email);
+
+        try (Connection conn = getConnection()) {
+            return createOrGet(conn, name, email, normalized);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error creating customer " + email, e);
+        }
+
+        // Fallback if insert failed
+        return new Customer(name, email);
+    }
+
+    private Customer createOrGet(Connection conn, String name, String email, String normalized)
+            throws SQLException {
+        Optional<Customer> existing = findByNormalizedEmail(conn, normalized);
         if (existing.isPresent()) {
             return existing.get();
         }
+        return insertOrGet(conn, idAllocator.nextId(), name, email, normalized);
+    }
 
-        String sql = "INSERT INTO customers (name, email) VALUES (?, ?)";
+    /**
+     * Inserts one customer, or returns the row that won a race for its email.
+     */
+    private Customer insertOrGet(Connection conn, int id, String name, String email, String normalized)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            bindInsert(stmt, id, name, email, normalized);
+            stmt.executeUpdate();
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // Either the email was registered since it was read, or the id is taken
+            Optional<Customer> existing = findByNormalizedEmail(conn, normalized);
+            if (existing.isPresent()) {
+                return existing.get();
+            }
+            if (idExists(conn, id)) {
+                throw new RepositoryException("Customer id " + id
+                        + " is already in use; the id allocator is behind the customers table", e);
+            }
+            throw e;
+        }
 
-            stmt.setString(1, name);
-            stmt.setString(2, email);
-            stmt.executeUpdate();
+        Customer customer = new Customer(name, email);
+        customer.setId(id);
+        return customer;
+    }
+
+    private boolean idExists(Connection conn, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM customers WHERE id = ?")) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void bindInsert(PreparedStatement stmt, int id, String name, String email,
+                                   String normalized) throws SQLException {
+        stmt.setInt(1, id);
+        stmt.setString(2, name);
+        stmt.setString(3, email);
+        stmt.setString(4, normalized);
+    }
+
+    /**
+     * Resolves many customers in one transaction: chunked IN-list lookups
+     * find the emails that already exist, then one JDBC batch of plain
+     * INSERTs under pre-allocated ids stores the rest. If the batch fails,
+     * for example because another session registered one of the emails
+     * meanwhile or one row is invalid, it is rolled back and the rows are
+     * retried one at a time so only the bad rows are lost.
+     */
+    @Override
+    public List<Customer> createOrGetAllByEmail(List<Customer> customers) {
+        List<Customer> resolved = new ArrayList<>(customers.size());
+        if (customers.isEmpty()) {
+            return resolved;
+        }
+
+        List<String> normalizedEmails = new ArrayList<>(customers.size());
+        for (Customer c : customers) {
+            normalizedEmails.add(Customer.normalizeEmail(c.getEmail()));
+        }
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                Map<String, Customer> existing = findByNormalizedEmails(conn, normalizedEmails);
+
+                List<Integer> missing = new ArrayList<>();
+                for (int i = 0; i < customers.size(); i++) {
+                    if (!existing.containsKey(normalizedEmails.get(i))) {
+                        missing.add(i);
+                    }
+                }
 
-            try (ResultSet keys = stmt.getGeneratedKeys()) {
-                if (keys.next()) {
-                    int id = keys.getInt(1);
-                    return new Customer(id, name, email);
+                int[] ids = idAllocator.nextIds(missing.size());
+                if (!missing.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                        for (int j = 0; j < missing.size(); j++) {
+                            Customer c = customers.get(missing.get(j));
+                            bindInsert(stmt, ids[j], c.getName(), c.getEmail(),
+                                    normalizedEmails.get(missing.get(j)));
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
                 }
+
+                conn.commit();
+
+                for (int j = 0; j < missing.size(); j++) {
+                    Customer c = customers.get(missing.get(j));
+                    Customer created = new Customer(c.getName(), c.getEmail());
+                    created.setId(ids[j]);
+                    existing.put(normalizedEmails.get(missing.get(j)), created);
+                }
+                for (String normalized : normalizedEmails) {
+                    resolved.add(existing.get(normalized));
+                }
+                return resolved;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                LOGGER.log(Level.WARNING,
+                        "Batch upsert of " + customers.size() + " customers failed; retrying row by row", e);
             }
 
+            conn.setAutoCommit(true);
+            for (int i = 0; i < customers.size(); i++) {
+                Customer c = customers.get(i);
+                try {
+                    resolved.add(createOrGet(conn, c.getName(), c.getEmail(), normalizedEmails.get(i)));
+                } catch (SQLException e) {
+                    LOGGER.log(Level.FINE, e, () -> "Rejected customer " + c.getEmail());
+                    resolved.add(new Customer(c.getName(), c.getEmail()));
+                }
+            }
+            return resolved;
+
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error creating customer " + email, e);
+            LOGGER.log(Level.SEVERE, "Error upserting " + customers.size() + " customers", e);
         }
 
-        // Fallback if insert failed or key missing
-        return new Customer(name, email);
+        // Fallback: nothing was saved
+        resolved.clear();
+        for (Customer c : customers) {
+            resolved.add(new Customer(c.getName(), c.getEmail()));
+        }
+        return resolved;
+    }
+
+    /**
+     * Loads customers by normalized email using IN lists of up to
+     * LOOKUP_CHUNK_SIZE values.
+     */
+    private Map<String, Customer> findByNormalizedEmails(Connection conn, List<String> normalizedEmails)
+            throws SQLException {
+        Map<String, Customer> found = new HashMap<>();
+
+        for (int from = 0; from < normalizedEmails.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = normalizedEmails.subList(
+                    from, Math.min(from + LOOKUP_CHUNK_SIZE, normalizedEmails.size()));
+            String sql = "SELECT id, name, email, email_normalized FROM customers " +
+                         "WHERE email_normalized IN (" +
+                         String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        found.put(rs.getString("email_normalized"), mapRow(rs));
+                    }
+                }
+            }
+        }
+
+        return found;
     }
 }
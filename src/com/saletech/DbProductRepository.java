@@ -2,30 +2,105 @@ package com.saletech;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 /**
  * DbProductRepository
  *
  * Database backed implementation of ProductRepository.
  * Uses JDBC to talk to the "products" table.
+ *
+ * StockListeners added here hear about every committed stock change made
+ * through this repository and through CheckoutService.
  */
 public class DbProductRepository implements ProductRepository {
 
     private static final Logger LOGGER =
             Logger.getLogger(DbProductRepository.class.getName());
 
-    // Update these three values to match your database
-    private static final String URL =
-            "jdbc:mysql://localhost:3306/saletech";   // database name from the SQL script
-    private static final String USER = "root";        // your DB user
-    private static final String PASSWORD = "";        // your DB password
+    // Maximum number of ids in one IN (...) query
+    private static final int IN_LIST_CHUNK_SIZE = 500;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO products " +
+            "(id, name, manufacturer, price, quantity_in_stock) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String STATS_COLUMNS =
+            "COUNT(*) AS sku_count, SUM(quantity_in_stock) AS total_units, " +
+            "SUM(price * quantity_in_stock) AS stock_value, " +
+            "MIN(quantity_in_stock) AS min_quantity, MAX(quantity_in_stock) AS max_quantity, " +
+            "MIN(price) AS min_price, MAX(price) AS max_price";
+
+    // Shared connection pool (see PooledDataSource)
+    private final DataSource dataSource;
+
+    private final List<StockListener> stockListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param dataSource Source of pooled connections shared by all repositories
+     */
+    public DbProductRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
 
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return dataSource.getConnection();
+    }
+
+    public void addStockListener(StockListener listener) {
+        stockListeners.add(listener);
+    }
+
+    public void removeStockListener(StockListener listener) {
+        stockListeners.remove(listener);
+    }
+
+    private void notifySaved(Product product) {
+        for (StockListener listener : stockListeners) {
+            try {
+                listener.productSaved(product);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Stock listener failed for product id " + product.getId(), e);
+            }
+        }
+    }
+
+    private void notifyChanged(int id, int newQuantity) {
+        for (StockListener listener : stockListeners) {
+            try {
+                listener.quantityChanged(id, newQuantity);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Stock listener failed for product id " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Reports units sold by a transaction that has committed, for callers
+     * such as CheckoutService that decrement stock on their own connection.
+     */
+    void notifySold(Map<Integer, Integer> quantities) {
+        for (StockListener listener : stockListeners) {
+            for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                try {
+                    listener.quantitySold(entry.getKey(), entry.getValue());
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Stock listener failed for product id " + entry.getKey(), e);
+                }
+            }
+        }
     }
 
     private Product mapRowToProduct(ResultSet rs) throws SQLException {
@@ -52,12 +127,94 @@ public class DbProductRepository implements ProductRepository {
             }
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching all products from database", e);
+            throw new RepositoryException("Error fetching all products from database", e);
+        }
+
+        return products;
+    }
+
+    @Override
+    public List<Product> findPage(int afterId, int limit) {
+        List<Product> products = new ArrayList<>(Math.min(limit, STREAM_PAGE_SIZE));
+        String sql = "SELECT id, name, manufacturer, price, quantity_in_stock " +
+                     "FROM products WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, limit);
+            stmt.setFetchSize(limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(mapRowToProduct(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            // An empty page would end streamAll early, so callers must see the failure
+            throw new RepositoryException("Error fetching product page after id " + afterId, e);
         }
 
         return products;
     }
 
+    /**
+     * Computes the totals in SQL, so one row comes back however large the
+     * catalog is.
+     */
+    @Override
+    public InventoryStats getInventoryStats() {
+        String sql = "SELECT " + STATS_COLUMNS + " FROM products";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            if (rs.next()) {
+                return mapStats(null, rs);
+            }
+
+        } catch (SQLException e) {
+            throw new RepositoryException("Error computing inventory stats", e);
+        }
+
+        return new InventoryStats(null, 0, 0, 0.0, 0, 0, 0.0, 0.0);
+    }
+
+    /**
+     * Groups in SQL; one row per manufacturer comes back.
+     */
+    @Override
+    public List<InventoryStats> getInventoryStatsByManufacturer() {
+        List<InventoryStats> results = new ArrayList<>();
+        String sql = "SELECT manufacturer, " + STATS_COLUMNS + " FROM products " +
+                     "GROUP BY manufacturer ORDER BY manufacturer";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                results.add(mapStats(rs.getString("manufacturer"), rs));
+            }
+
+        } catch (SQLException e) {
+            throw new RepositoryException("Error computing inventory stats by manufacturer", e);
+        }
+
+        return results;
+    }
+
+    private static InventoryStats mapStats(String manufacturer, ResultSet rs) throws SQLException {
+        // Aggregates over no rows are NULL, which getLong/getDouble read as 0
+        return new InventoryStats(manufacturer,
+                rs.getLong("sku_count"), rs.getLong("total_units"), rs.getDouble("stock_value"),
+                rs.getInt("min_quantity"), rs.getInt("max_quantity"),
+                rs.getDouble("min_price"), rs.getDouble("max_price"));
+    }
+
     @Override
     public Optional<Product> findById(int id) {
         String sql = "SELECT id, name, manufacturer, price, quantity_in_stock " +
@@ -75,18 +232,74 @@ public class DbProductRepository implements ProductRepository {
             }
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching product by id " + id, e);
+            throw new RepositoryException("Error fetching product by id " + id, e);
         }
 
         return Optional.empty();
     }
 
+    @Override
+    public Map<Integer, Product> findByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        try (Connection conn = getConnection()) {
+            return findByIds(conn, ids);
+        } catch (SQLException e) {
+            throw new RepositoryException("Error fetching " + ids.size() + " products by id", e);
+        }
+    }
+
+    /**
+     * Loads products with IN-list queries of up to IN_LIST_CHUNK_SIZE ids,
+     * on the caller's connection so it can be part of a transaction
+     * (see CheckoutService).
+     */
+    Map<Integer, Product> findByIds(Connection conn, Collection<Integer> ids) throws SQLException {
+        Map<Integer, Product> products = new HashMap<>();
+        List<Integer> idList = new ArrayList<>(ids);
+
+        for (int from = 0; from < idList.size(); from += IN_LIST_CHUNK_SIZE) {
+            List<Integer> chunk = idList.subList(from, Math.min(from + IN_LIST_CHUNK_SIZE, idList.size()));
+            String sql = "SELECT id, name, manufacturer, price, quantity_in_stock " +
+                         "FROM products WHERE id IN (" +
+                         String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Product p = mapRowToProduct(rs);
+                        products.put(p.getId(), p);
+                    }
+                }
+            }
+        }
+
+        return products;
+    }
+
     @Override
     public List<Product> searchByNameOrManufacturer(String term) {
+        return searchByNameOrManufacturer(term, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Substring search in SQL. A leading wildcard cannot use an index, so
+     * this is a table scan; wrap the repository in an
+     * IndexedSearchProductRepository for fast interactive search.
+     */
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term, int limit) {
         List<Product> products = new ArrayList<>();
         String sql = "SELECT id, name, manufacturer, price, quantity_in_stock " +
                      "FROM products " +
-                     "WHERE LOWER(name) LIKE ? OR LOWER(manufacturer) LIKE ?";
+                     "WHERE LOWER(name) LIKE ? OR LOWER(manufacturer) LIKE ? " +
+                     "LIMIT ?";
 
         String pattern = "%" + term.toLowerCase() + "%";
 
@@ -95,6 +308,7 @@ public class DbProductRepository implements ProductRepository {
 
             stmt.setString(1, pattern);
             stmt.setString(2, pattern);
+            stmt.setInt(3, limit);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -103,7 +317,7 @@ public class DbProductRepository implements ProductRepository {
             }
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE,
+            throw new RepositoryException(
                     "Error searching products by term '" + term + "'", e);
         }
 
@@ -112,25 +326,79 @@ public class DbProductRepository implements ProductRepository {
 
     @Override
     public void save(Product product) {
-        String sql = "INSERT INTO products " +
-                     "(id, name, manufacturer, price, quantity_in_stock) " +
-                     "VALUES (?, ?, ?, ?, ?)";
-
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, product.getId());
-            stmt.setString(2, product.getName());
-            stmt.setString(3, product.getManufacturer());
-            stmt.setDouble(4, product.getPrice());
-            stmt.setInt(5, product.getQuantityInStock());
+             PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
 
+            bindInsert(stmt, product);
             stmt.executeUpdate();
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE,
-                    "Error saving product with id " + product.getId(), e);
+            throw new RepositoryException("Error saving product with id " + product.getId(), e);
         }
+        notifySaved(product);
+    }
+
+    /**
+     * Inserts the products as one JDBC batch inside a single transaction.
+     * If the batch fails (for example on a duplicate id), it is rolled back
+     * and the rows are retried one at a time so only the bad rows are lost.
+     */
+    @Override
+    public int saveAll(List<Product> products) {
+        if (products.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                for (Product product : products) {
+                    bindInsert(stmt, product);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                for (Product product : products) {
+                    notifySaved(product);
+                }
+                return products.size();
+
+            } catch (SQLException e) {
+                conn.rollback();
+                LOGGER.log(Level.WARNING,
+                        "Batch insert of " + products.size() + " products failed; retrying row by row", e);
+            }
+
+            conn.setAutoCommit(true);
+            int stored = 0;
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                for (Product product : products) {
+                    try {
+                        bindInsert(stmt, product);
+                        stmt.executeUpdate();
+                        stored++;
+                        notifySaved(product);
+                    } catch (SQLException e) {
+                        LOGGER.log(Level.FINE, e, () -> "Rejected product with id " + product.getId());
+                    }
+                }
+            }
+            return stored;
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error saving " + products.size() + " products", e);
+        }
+
+        return 0;
+    }
+
+    private static void bindInsert(PreparedStatement stmt, Product product) throws SQLException {
+        stmt.setInt(1, product.getId());
+        stmt.setString(2, product.getName());
+        stmt.setString(3, product.getManufacturer());
+        stmt.setDouble(4, product.getPrice());
+        stmt.setInt(5, product.getQuantityInStock());
     }
 
     @Override
@@ -143,11 +411,51 @@ public class DbProductRepository implements ProductRepository {
             stmt.setInt(1, newQuantity);
             stmt.setInt(2, id);
 
-            stmt.executeUpdate();
+            if (stmt.executeUpdate() > 0) {
+                notifyChanged(id, newQuantity);
+            }
+
+        } catch (SQLException e) {
+            throw new RepositoryException("Error updating quantity for product id " + id, e);
+        }
+    }
+
+    /**
+     * Applies all updates as one JDBC batch in one transaction. Rows are
+     * updated in id order so concurrent batches lock them in the same order.
+     */
+    @Override
+    public boolean updateQuantities(Map<Integer, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return true;
+        }
+        String sql = "UPDATE products SET quantity_in_stock = ? WHERE id = ?";
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (Map.Entry<Integer, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+                    stmt.setInt(1, entry.getValue());
+                    stmt.setInt(2, entry.getKey());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                    notifyChanged(entry.getKey(), entry.getValue());
+                }
+                return true;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE,
-                    "Error updating quantity for product id " + id, e);
+            LOGGER.log(Level.SEVERE, "Error updating quantities for " + quantities.size() + " products", e);
         }
+
+        return false;
     }
 }
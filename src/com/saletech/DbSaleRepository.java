@@ -1,119 +1,403 @@
 package com.saletech;
 
+import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 /**
  * DbSaleRepository
  *
  * JDBC backed sale persistence with a transaction.
+ *
+ * Every insert also adds the sale to the sales_daily, sales_by_product and
+ * sales_by_customer rollups in the same transaction, so the totals read by
+ * DbSalesReportRepository always match the committed sales.
+ *
+ * findByIds reads sales back with two queries per 500 ids, one for the
+ * sales and their customers and one for all of their lines and products,
+ * which needs an index on sale_lines.sale_id:
+ *
+ *   CREATE INDEX idx_sale_lines_sale_id ON sale_lines (sale_id);
  */
 public class DbSaleRepository implements SaleRepository {
 
     private static final Logger LOGGER =
             Logger.getLogger(DbSaleRepository.class.getName());
 
-    // Keep these consistent with DbProductRepository
-    private static final String URL = "jdbc:mysql://localhost:3306/saletech";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
+    // Upper bound on rows in one multi-row INSERT
+    private static final int ROWS_PER_STATEMENT = 500;
+
+    // Maximum number of ids in one IN (...) query
+    private static final int IN_LIST_CHUNK_SIZE = 500;
+
+    // Adds the inserted totals to an existing rollup row
+    private static final String ROLLUP_INCREMENT =
+            "ON DUPLICATE KEY UPDATE sale_count = sale_count + VALUES(sale_count), " +
+            "units = units + VALUES(units), revenue = revenue + VALUES(revenue)";
+
+    // Shared connection pool (see PooledDataSource)
+    private final DataSource dataSource;
+
+    // Assigns sale ids before INSERT
+    private final IdAllocator idAllocator;
+
+    /**
+     * @param dataSource  Source of pooled connections shared by all repositories
+     * @param idAllocator Block allocator for sales ids
+     */
+    public DbSaleRepository(DataSource dataSource, IdAllocator idAllocator) {
+        this.dataSource = dataSource;
+        this.idAllocator = idAllocator;
+    }
 
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return dataSource.getConnection();
     }
 
     @Override
     public Sale save(Sale sale) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                int saleId = insert(conn, sale);
+                conn.commit();
+
+                // Update the in-memory object with the allocated id
+                sale.setId(saleId);
+                return sale;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error saving sale to database", e);
+        }
+
+        return sale;
+    }
+
+    /**
+     * Inserts the sale row and its line items on the caller's connection.
+     * Does not commit, so callers such as CheckoutService can make the insert
+     * part of a larger transaction.
+     *
+     * @param conn Connection with auto-commit disabled
+     * @param sale Sale to insert
+     * @return The allocated sale id
+     * @throws SQLException if the sale is invalid or an insert fails
+     */
+    int insert(Connection conn, Sale sale) throws SQLException {
+        return insertAll(conn, List.of(sale))[0];
+    }
+
+    /**
+     * Inserts several sales and all of their line items on the caller's
+     * connection without committing. Sale ids come from the IdAllocator, so
+     * sales and line items are both written as multi-row INSERTs of up to
+     * ROWS_PER_STATEMENT rows each, with no generated-key round trip.
+     *
+     * @param conn  Connection with auto-commit disabled
+     * @param sales Sales to insert
+     * @return Assigned sale ids, in the same order as sales
+     * @throws SQLException if any sale is invalid or an insert fails
+     */
+    int[] insertAll(Connection conn, List<Sale> sales) throws SQLException {
         // Match your actual schema:
         // sales: id, customer_id, sale_date, total
         // sale_lines: id, sale_id, product_id, quantity, unit_price, line_total
-        final String insertSaleSql =
-                "INSERT INTO sales (customer_id, total) VALUES (?, ?)";
-        final String insertLineSql =
-                "INSERT INTO sale_lines (sale_id, product_id, quantity, unit_price, line_total) VALUES (?, ?, ?, ?, ?)";
+        final String insertSalePrefix =
+                "INSERT INTO sales (id, customer_id, sale_date, total) VALUES ";
 
-        try (Connection conn = getConnection()) {
-            conn.setAutoCommit(false);
+        for (Sale sale : sales) {
+            validate(sale);
+        }
 
-            int saleId;
+        int[] saleIds = idAllocator.nextIds(sales.size());
+        // One timestamp for every row, so the daily rollup is keyed on the
+        // same day that is stored in sale_date. Whole seconds, because a
+        // DATETIME column rounds fractions and 23:59:59.5 would become the
+        // next day.
+        LocalDateTime saleDate = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
 
-            try (PreparedStatement saleStmt =
-                         conn.prepareStatement(insertSaleSql, Statement.RETURN_GENERATED_KEYS)) {
+        for (int from = 0; from < sales.size(); from += ROWS_PER_STATEMENT) {
+            int to = Math.min(from + ROWS_PER_STATEMENT, sales.size());
+            int rows = to - from;
+            String sql = insertSalePrefix + String.join(", ", Collections.nCopies(rows, "(?, ?, ?, ?)"));
 
-                if (sale.getCustomer() == null || sale.getCustomer().getId() <= 0) {
-                    conn.rollback();
-                    throw new SQLException("Sale must have a valid customer with a DB id.");
+            try (PreparedStatement saleStmt = conn.prepareStatement(sql)) {
+                int param = 1;
+                for (int i = from; i < to; i++) {
+                    Sale sale = sales.get(i);
+                    saleStmt.setInt(param++, saleIds[i]);
+                    saleStmt.setInt(param++, sale.getCustomer().getId());
+                    saleStmt.setTimestamp(param++, Timestamp.valueOf(saleDate));
+                    saleStmt.setDouble(param++, sale.getTotal());
                 }
 
-                saleStmt.setInt(1, sale.getCustomer().getId());
-                saleStmt.setDouble(2, sale.getTotal());
-
                 int affected = saleStmt.executeUpdate();
-                if (affected != 1) {
-                    conn.rollback();
-                    throw new SQLException("Insert into sales failed. Rows affected: " + affected);
-                }
-
-                try (ResultSet keys = saleStmt.getGeneratedKeys()) {
-                    if (!keys.next()) {
-                        conn.rollback();
-                        throw new SQLException("Failed to obtain generated sale id.");
-                    }
-                    saleId = keys.getInt(1);
+                if (affected != rows) {
+                    throw new SQLException("Insert into sales failed. Expected " + rows +
+                            " rows, inserted " + affected);
                 }
             }
+        }
 
-            // Insert sale lines
-            try (PreparedStatement lineStmt = conn.prepareStatement(insertLineSql)) {
-                List<SaleLine> lines = sale.getLines();
-                if (lines == null || lines.isEmpty()) {
-                    conn.rollback();
-                    throw new SQLException("Cannot save a sale with no line items.");
-                }
+        insertLines(conn, sales, saleIds);
+        updateRollups(conn, sales, saleDate.toLocalDate());
+        return saleIds;
+    }
 
-                for (SaleLine line : lines) {
-                    if (line.getProduct() == null || line.getProduct().getId() <= 0) {
-                        conn.rollback();
-                        throw new SQLException("SaleLine must have a valid product with a DB id.");
-                    }
-                    if (line.getQuantity() <= 0) {
-                        conn.rollback();
-                        throw new SQLException("SaleLine quantity must be > 0.");
-                    }
+    /**
+     * Inserts the line items of every sale using multi-row INSERT statements.
+     */
+    private void insertLines(Connection conn, List<Sale> sales, int[] saleIds) throws SQLException {
+        final String insertLinePrefix =
+                "INSERT INTO sale_lines (sale_id, product_id, quantity, unit_price, line_total) VALUES ";
+
+        // Flatten to (sale id, line) pairs so chunks can span sales
+        List<SaleLine> lines = new ArrayList<>();
+        List<Integer> lineSaleIds = new ArrayList<>();
+        for (int i = 0; i < sales.size(); i++) {
+            for (SaleLine line : sales.get(i).getLines()) {
+                lines.add(line);
+                lineSaleIds.add(saleIds[i]);
+            }
+        }
 
+        for (int from = 0; from < lines.size(); from += ROWS_PER_STATEMENT) {
+            int to = Math.min(from + ROWS_PER_STATEMENT, lines.size());
+            int rows = to - from;
+            String sql = insertLinePrefix + String.join(", ", Collections.nCopies(rows, "(?, ?, ?, ?, ?)"));
+
+            try (PreparedStatement lineStmt = conn.prepareStatement(sql)) {
+                int param = 1;
+                for (int i = from; i < to; i++) {
+                    SaleLine line = lines.get(i);
                     double unitPrice = line.getUnitPrice();
                     double lineTotal = unitPrice * line.getQuantity();
 
-                    lineStmt.setInt(1, saleId);
-                    lineStmt.setInt(2, line.getProduct().getId());
-                    lineStmt.setInt(3, line.getQuantity());
-                    lineStmt.setDouble(4, unitPrice);
-                    lineStmt.setDouble(5, lineTotal);
-                    lineStmt.addBatch();
+                    lineStmt.setInt(param++, lineSaleIds.get(i));
+                    lineStmt.setInt(param++, line.getProduct().getId());
+                    lineStmt.setInt(param++, line.getQuantity());
+                    lineStmt.setDouble(param++, unitPrice);
+                    lineStmt.setDouble(param++, lineTotal);
                 }
 
-                int[] counts = lineStmt.executeBatch();
-                if (counts.length == 0) {
-                    conn.rollback();
-                    throw new SQLException("Insert into sale_lines failed. No rows inserted.");
+                int affected = lineStmt.executeUpdate();
+                if (affected != rows) {
+                    throw new SQLException("Insert into sale_lines failed. Expected " + rows +
+                            " rows, inserted " + affected);
                 }
             }
+        }
+    }
+
+    /**
+     * Adds the sales to the rollup tables. Totals are summed here first, so
+     * each day, product and customer is written once per call however many
+     * sales or lines mention it. Rows are upserted in key order to keep lock
+     * order the same across concurrent transactions.
+     */
+    private void updateRollups(Connection conn, List<Sale> sales, LocalDate saleDay) throws SQLException {
+        RollupTotals day = new RollupTotals();
+        Map<Integer, RollupTotals> byProduct = new TreeMap<>();
+        Map<Integer, RollupTotals> byCustomer = new TreeMap<>();
+
+        for (Sale sale : sales) {
+            Map<Integer, RollupTotals> saleProducts = new HashMap<>();
+            long saleUnits = 0;
+            long saleCents = 0;
+            for (SaleLine line : sale.getLines()) {
+                long cents = Math.round(line.getUnitPrice() * line.getQuantity() * 100);
+                saleProducts.computeIfAbsent(line.getProduct().getId(), id -> new RollupTotals())
+                        .add(0, line.getQuantity(), cents);
+                saleUnits += line.getQuantity();
+                saleCents += cents;
+            }
+
+            // A product on two lines of one sale still counts as one sale
+            for (Map.Entry<Integer, RollupTotals> entry : saleProducts.entrySet()) {
+                RollupTotals t = entry.getValue();
+                byProduct.computeIfAbsent(entry.getKey(), id -> new RollupTotals())
+                        .add(1, t.units, t.cents);
+            }
+            byCustomer.computeIfAbsent(sale.getCustomer().getId(), id -> new RollupTotals())
+                    .add(1, saleUnits, saleCents);
+            day.add(1, saleUnits, saleCents);
+        }
+
+        String dailySql =
+                "INSERT INTO sales_daily (sale_day, sale_count, units, revenue) " +
+                "VALUES (?, ?, ?, ?) " + ROLLUP_INCREMENT;
+        try (PreparedStatement stmt = conn.prepareStatement(dailySql)) {
+            stmt.setDate(1, Date.valueOf(saleDay));
+            day.bind(stmt, 2);
+            stmt.executeUpdate();
+        }
+
+        upsertRollups(conn, "sales_by_product", "product_id", byProduct);
+        upsertRollups(conn, "sales_by_customer", "customer_id", byCustomer);
+    }
 
-            conn.commit();
+    private void upsertRollups(Connection conn, String table, String keyColumn,
+                               Map<Integer, RollupTotals> totals) throws SQLException {
+        List<Map.Entry<Integer, RollupTotals>> rows = new ArrayList<>(totals.entrySet());
+        for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+            int to = Math.min(from + ROWS_PER_STATEMENT, rows.size());
+            String sql = "INSERT INTO " + table + " (" + keyColumn + ", sale_count, units, revenue) VALUES " +
+                    String.join(", ", Collections.nCopies(to - from, "(?, ?, ?, ?)")) + " " +
+                    ROLLUP_INCREMENT;
 
-            // Update the in-memory object with the DB-generated id
-            sale.setId(saleId);
-            return sale;
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int param = 1;
+                for (int i = from; i < to; i++) {
+                    stmt.setInt(param++, rows.get(i).getKey());
+                    param = rows.get(i).getValue().bind(stmt, param);
+                }
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Rejects sales that cannot be stored.
+     */
+    private static void validate(Sale sale) throws SQLException {
+        if (sale.getCustomer() == null || sale.getCustomer().getId() <= 0) {
+            throw new SQLException("Sale must have a valid customer with a DB id.");
+        }
+
+        List<SaleLine> lines = sale.getLines();
+        if (lines == null || lines.isEmpty()) {
+            throw new SQLException("Cannot save a sale with no line items.");
+        }
+
+        for (SaleLine line : lines) {
+            if (line.getProduct() == null || line.getProduct().getId() <= 0) {
+                throw new SQLException("SaleLine must have a valid product with a DB id.");
+            }
+            if (line.getQuantity() <= 0) {
+                throw new SQLException("SaleLine quantity must be > 0.");
+            }
+        }
+    }
+
+    /**
+     * Loads the sales with their customers, then all of their lines with
+     * their products, on one connection. Customers and products are kept
+     * in per-call identity maps, so one shared by many lines or sales is
+     * built once and every line refers to the same object.
+     */
+    @Override
+    public Map<Integer, Sale> findByIds(Collection<Integer> ids) {
+        Map<Integer, Sale> sales = new HashMap<>();
+        Map<Integer, Customer> customers = new HashMap<>();
+        Map<Integer, Product> products = new HashMap<>();
+        List<Integer> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        try (Connection conn = getConnection()) {
+            for (int from = 0; from < idList.size(); from += IN_LIST_CHUNK_SIZE) {
+                List<Integer> chunk = idList.subList(from, Math.min(from + IN_LIST_CHUNK_SIZE, idList.size()));
+                loadSales(conn, chunk, sales, customers);
+                loadLines(conn, chunk, sales, products);
+            }
+            return sales;
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error saving sale to database", e);
+            throw new RepositoryException("Error loading " + idList.size() + " sales", e);
         }
+    }
 
-        return sale;
+    private void loadSales(Connection conn, List<Integer> ids, Map<Integer, Sale> sales,
+                           Map<Integer, Customer> customers) throws SQLException {
+        String sql =
+                "SELECT s.id, s.sale_date, s.customer_id, c.name, c.email " +
+                "FROM sales s " +
+                "JOIN customers c ON c.id = s.customer_id " +
+                "WHERE s.id IN (" + placeholders(ids.size()) + ")";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindIds(stmt, ids);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int customerId = rs.getInt("customer_id");
+                    Customer customer = customers.get(customerId);
+                    if (customer == null) {
+                        customer = new Customer(customerId, rs.getString("name"), rs.getString("email"));
+                        customers.put(customerId, customer);
+                    }
+
+                    Timestamp ts = rs.getTimestamp("sale_date");
+                    LocalDateTime createdAt = (ts == null) ? null : ts.toLocalDateTime();
+                    Sale sale = new Sale(rs.getInt("id"), customer, createdAt);
+                    sales.put(sale.getId(), sale);
+                }
+            }
+        }
+    }
+
+    private void loadLines(Connection conn, List<Integer> ids, Map<Integer, Sale> sales,
+                           Map<Integer, Product> products) throws SQLException {
+        // LEFT JOIN so a line still loads if its product row is gone
+        String sql =
+                "SELECT l.sale_id, l.product_id, l.quantity, l.unit_price, " +
+                "p.name, p.manufacturer, p.price, p.quantity_in_stock " +
+                "FROM sale_lines l " +
+                "LEFT JOIN products p ON p.id = l.product_id " +
+                "WHERE l.sale_id IN (" + placeholders(ids.size()) + ") " +
+                "ORDER BY l.sale_id, l.id";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindIds(stmt, ids);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Sale sale = sales.get(rs.getInt("sale_id"));
+                    if (sale == null) {
+                        continue;
+                    }
+
+                    int productId = rs.getInt("product_id");
+                    double unitPrice = rs.getDouble("unit_price");
+                    Product product = products.get(productId);
+                    if (product == null) {
+                        product = new Product(productId, rs.getString("name"), rs.getString("manufacturer"),
+                                rs.getDouble("price"), rs.getInt("quantity_in_stock"));
+                        products.put(productId, product);
+                    }
+
+                    sale.addLine(product, rs.getInt("quantity"), unitPrice);
+                }
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void bindIds(PreparedStatement stmt, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            stmt.setInt(i + 1, ids.get(i));
+        }
     }
 
     @Override
@@ -135,21 +419,94 @@ public class DbSaleRepository implements SaleRepository {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    int saleId = rs.getInt("sale_id");
-                    Timestamp ts = rs.getTimestamp("sale_date");
-                    LocalDateTime createdAt = (ts == null) ? null : ts.toLocalDateTime();
-                    double total = rs.getDouble("total");
-                    String name = rs.getString("name");
-                    String email = rs.getString("email");
+                    results.add(mapSummary(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RepositoryException("Error fetching recent sale summaries", e);
+        }
+
+        return results;
+    }
+
+    /**
+     * Reads one page with a (sale_date, id) range condition, which the
+     * idx_sales_date_id index answers by seeking straight to the cursor:
+     *
+     *   CREATE INDEX idx_sales_date_id ON sales (sale_date, id);
+     */
+    @Override
+    public List<SaleSummary> findSummariesPage(LocalDateTime afterDate, int afterId, LocalDateTime to, int limit) {
+        List<SaleSummary> results = new ArrayList<>();
 
-                    results.add(new SaleSummary(saleId, createdAt, name, email, total));
+        String sql =
+                "SELECT s.id AS sale_id, s.sale_date, s.total, c.name, c.email " +
+                "FROM sales s " +
+                "JOIN customers c ON c.id = s.customer_id " +
+                "WHERE s.sale_date >= ? AND s.sale_date < ? " +
+                "AND (s.sale_date > ? OR s.id > ?) " +
+                "ORDER BY s.sale_date, s.id " +
+                "LIMIT ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            Timestamp after = Timestamp.valueOf(afterDate);
+            stmt.setTimestamp(1, after);
+            stmt.setTimestamp(2, Timestamp.valueOf(to));
+            stmt.setTimestamp(3, after);
+            stmt.setInt(4, afterId);
+            stmt.setInt(5, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(mapSummary(rs));
                 }
             }
 
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching recent sale summaries", e);
+            throw new RepositoryException("Error fetching sale summaries after " + afterDate + "/" + afterId, e);
         }
 
         return results;
     }
+
+    private static SaleSummary mapSummary(ResultSet rs) throws SQLException {
+        int saleId = rs.getInt("sale_id");
+        Timestamp ts = rs.getTimestamp("sale_date");
+        LocalDateTime createdAt = (ts == null) ? null : ts.toLocalDateTime();
+        double total = rs.getDouble("total");
+        String name = rs.getString("name");
+        String email = rs.getString("email");
+
+        return new SaleSummary(saleId, createdAt, name, email, total);
+    }
+
+    /**
+     * Sales, units and revenue in cents being added to one rollup row.
+     */
+    private static final class RollupTotals {
+        long saleCount;
+        long units;
+        long cents;
+
+        void add(long saleCount, long units, long cents) {
+            this.saleCount += saleCount;
+            this.units += units;
+            this.cents += cents;
+        }
+
+        /**
+         * Binds sale_count, units and revenue starting at param.
+         *
+         * @return The next parameter index
+         */
+        int bind(PreparedStatement stmt, int param) throws SQLException {
+            stmt.setLong(param++, saleCount);
+            stmt.setLong(param++, units);
+            stmt.setBigDecimal(param++, BigDecimal.valueOf(cents, 2));
+            return param;
+        }
+    }
 }
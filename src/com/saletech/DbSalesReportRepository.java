@@ -0,0 +1,188 @@
+package com.saletech;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * DbSalesReportRepository
+ *
+ * JDBC backed sales reports over the rollup tables that DbSaleRepository
+ * updates with every sale. Each rollup is keyed by its day, product or
+ * customer, and the revenue indexes let top-N queries stop after N rows:
+ *
+ *   CREATE TABLE sales_daily (
+ *       sale_day DATE PRIMARY KEY, sale_count INT NOT NULL,
+ *       units BIGINT NOT NULL, revenue DECIMAL(14, 2) NOT NULL);
+ *   CREATE TABLE sales_by_product (
+ *       product_id INT PRIMARY KEY, sale_count INT NOT NULL,
+ *       units BIGINT NOT NULL, revenue DECIMAL(14, 2) NOT NULL,
+ *       KEY idx_sales_by_product_revenue (revenue));
+ *   CREATE TABLE sales_by_customer (
+ *       customer_id INT PRIMARY KEY, sale_count INT NOT NULL,
+ *       units BIGINT NOT NULL, revenue DECIMAL(14, 2) NOT NULL,
+ *       KEY idx_sales_by_customer_revenue (revenue));
+ *
+ * Run rebuild() once after creating the tables to backfill existing sales.
+ */
+public class DbSalesReportRepository implements SalesReportRepository {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(DbSalesReportRepository.class.getName());
+
+    // Shared connection pool (see PooledDataSource)
+    private final DataSource dataSource;
+
+    /**
+     * @param dataSource Source of pooled connections shared by all repositories
+     */
+    public DbSalesReportRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public List<SalesRollup> findDailySales(LocalDate from, LocalDate to) {
+        List<SalesRollup> results = new ArrayList<>();
+        String sql =
+                "SELECT sale_day, sale_count, units, revenue FROM sales_daily " +
+                "WHERE sale_day BETWEEN ? AND ? ORDER BY sale_day";
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setDate(1, Date.valueOf(from));
+            stmt.setDate(2, Date.valueOf(to));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(new SalesRollup(rs.getDate("sale_day").toLocalDate(),
+                            rs.getLong("sale_count"), rs.getLong("units"), rs.getDouble("revenue")));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RepositoryException("Error fetching daily sales from " + from + " to " + to, e);
+        }
+
+        return results;
+    }
+
+    @Override
+    public List<SalesRollup> findTopProducts(int limit) {
+        String sql =
+                "SELECT r.product_id AS id, p.name, r.sale_count, r.units, r.revenue " +
+                "FROM sales_by_product r LEFT JOIN products p ON p.id = r.product_id " +
+                "ORDER BY r.revenue DESC LIMIT ?";
+        return findKeyed(sql, limit, "Error fetching top products");
+    }
+
+    @Override
+    public List<SalesRollup> findTopCustomers(int limit) {
+        String sql =
+                "SELECT r.customer_id AS id, c.name, r.sale_count, r.units, r.revenue " +
+                "FROM sales_by_customer r LEFT JOIN customers c ON c.id = r.customer_id " +
+                "ORDER BY r.revenue DESC LIMIT ?";
+        return findKeyed(sql, limit, "Error fetching top customers");
+    }
+
+    @Override
+    public Optional<SalesRollup> findProductSales(int productId) {
+        String sql =
+                "SELECT r.product_id AS id, p.name, r.sale_count, r.units, r.revenue " +
+                "FROM sales_by_product r LEFT JOIN products p ON p.id = r.product_id " +
+                "WHERE r.product_id = ?";
+        return findKeyed(sql, productId, "Error fetching sales of product id " + productId)
+                .stream().findFirst();
+    }
+
+    @Override
+    public Optional<SalesRollup> findCustomerSales(int customerId) {
+        String sql =
+                "SELECT r.customer_id AS id, c.name, r.sale_count, r.units, r.revenue " +
+                "FROM sales_by_customer r LEFT JOIN customers c ON c.id = r.customer_id " +
+                "WHERE r.customer_id = ?";
+        return findKeyed(sql, customerId, "Error fetching sales of customer id " + customerId)
+                .stream().findFirst();
+    }
+
+    /**
+     * Runs a product or customer rollup query with one int parameter.
+     */
+    private List<SalesRollup> findKeyed(String sql, int param, String errorMessage) {
+        List<SalesRollup> results = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, param);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(new SalesRollup(rs.getInt("id"), rs.getString("name"),
+                            rs.getLong("sale_count"), rs.getLong("units"), rs.getDouble("revenue")));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RepositoryException(errorMessage, e);
+        }
+
+        return results;
+    }
+
+    /**
+     * Replaces every rollup row with totals recomputed from sales and
+     * sale_lines in one transaction. Sales committed while the rebuild runs
+     * wait for it on the rollup row locks and are then added on top.
+     */
+    @Override
+    public boolean rebuild() {
+        String[] statements = {
+                "DELETE FROM sales_daily",
+                "DELETE FROM sales_by_product",
+                "DELETE FROM sales_by_customer",
+                "INSERT INTO sales_daily (sale_day, sale_count, units, revenue) " +
+                        "SELECT CAST(s.sale_date AS DATE), COUNT(DISTINCT s.id), SUM(l.quantity), SUM(l.line_total) " +
+                        "FROM sales s JOIN sale_lines l ON l.sale_id = s.id " +
+                        "GROUP BY CAST(s.sale_date AS DATE)",
+                "INSERT INTO sales_by_product (product_id, sale_count, units, revenue) " +
+                        "SELECT l.product_id, COUNT(DISTINCT l.sale_id), SUM(l.quantity), SUM(l.line_total) " +
+                        "FROM sale_lines l GROUP BY l.product_id",
+                "INSERT INTO sales_by_customer (customer_id, sale_count, units, revenue) " +
+                        "SELECT s.customer_id, COUNT(DISTINCT s.id), SUM(l.quantity), SUM(l.line_total) " +
+                        "FROM sales s JOIN sale_lines l ON l.sale_id = s.id " +
+                        "GROUP BY s.customer_id"
+        };
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : statements) {
+                    stmt.executeUpdate(sql);
+                }
+                conn.commit();
+                return true;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error rebuilding sales rollups", e);
+        }
+
+        return false;
+    }
+}
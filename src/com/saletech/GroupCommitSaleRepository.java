@@ -0,0 +1,312 @@
+package com.saletech;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * GroupCommitSaleRepository
+ *
+ * Asynchronous SaleRepository that coalesces sales arriving close together
+ * into one transaction, so many checkouts share a single commit (and fsync)
+ * instead of paying for one each.
+ *
+ * saveAsync queues the sale and returns immediately. A background writer
+ * takes the first queued sale, keeps collecting until either maxBatchSize
+ * sales are waiting or maxDelay has passed since that first sale was queued,
+ * then writes the whole group through DbSaleRepository.insertAll (multi-row
+ * INSERTs for sales and line items) and commits.
+ * maxDelay is therefore the longest any sale waits before its commit starts.
+ *
+ * If a group fails, each sale is retried in its own transaction so one bad
+ * sale does not fail the others.
+ *
+ * Call start() once the repository is constructed; nothing is written
+ * until then.
+ */
+public class GroupCommitSaleRepository implements SaleRepository, AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(GroupCommitSaleRepository.class.getName());
+
+    private final DataSource dataSource;
+    private final DbSaleRepository delegate;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<PendingSale> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder batchedSales = new LongAdder();
+    private final LongAdder salesCommitted = new LongAdder();
+    private final LongAdder salesFailed = new LongAdder();
+
+    /**
+     * @param dataSource   Source of pooled connections
+     * @param delegate     Performs the inserts and serves read queries
+     * @param maxDelay     Longest time a sale waits for others to join its group
+     * @param maxBatchSize Maximum number of sales committed together
+     */
+    public GroupCommitSaleRepository(DataSource dataSource, DbSaleRepository delegate,
+                                     Duration maxDelay, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be > 0");
+        }
+        this.dataSource = dataSource;
+        this.delegate = delegate;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxBatchSize = maxBatchSize;
+
+        this.writer = new Thread(this::runWriter, "sale-group-commit");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Starts the writer thread. Sales queued before this wait for it.
+     */
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Queues the sale for the next group commit.
+     *
+     * @return Future completed with the saved sale, or exceptionally if it could not be saved
+     */
+    @Override
+    public CompletableFuture<Sale> saveAsync(Sale sale) {
+        if (!running) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("GroupCommitSaleRepository is closed."));
+        }
+        PendingSale pending = new PendingSale(sale);
+        queue.add(pending);
+        // close() may have run between the check and the add; if the writer
+        // has not taken the sale, nothing ever will
+        if (!running && queue.remove(pending)) {
+            pending.future.completeExceptionally(
+                    new IllegalStateException("GroupCommitSaleRepository is closed."));
+        }
+        return pending.future;
+    }
+
+    /**
+     * Queues the sale and waits for its group to commit. Like
+     * DbSaleRepository.save, a failure is logged and the unsaved sale returned.
+     */
+    @Override
+    public Sale save(Sale sale) {
+        try {
+            return saveAsync(sale).join();
+        } catch (CompletionException e) {
+            LOGGER.log(Level.SEVERE, "Error saving sale to database", e.getCause());
+            return sale;
+        }
+    }
+
+    @Override
+    public Map<Integer, Sale> findByIds(Collection<Integer> ids) {
+        return delegate.findByIds(ids);
+    }
+
+    @Override
+    public List<SaleSummary> findRecentSummaries(int limit) {
+        return delegate.findRecentSummaries(limit);
+    }
+
+    @Override
+    public List<SaleSummary> findSummariesPage(LocalDateTime afterDate, int afterId, LocalDateTime to, int limit) {
+        return delegate.findSummariesPage(afterDate, afterId, to, limit);
+    }
+
+    private void runWriter() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingSale first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                List<PendingSale> batch = new ArrayList<>();
+                batch.add(first);
+
+                long deadline = first.queuedAt + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingSale next = (remaining > 0)
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatchSafely(batch);
+
+            } catch (InterruptedException e) {
+                // close() drains whatever is left after the loop exits
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        List<PendingSale> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (int from = 0; from < leftover.size(); from += maxBatchSize) {
+            writeBatchSafely(leftover.subList(from, Math.min(from + maxBatchSize, leftover.size())));
+        }
+    }
+
+    /**
+     * Writes a batch, failing its futures instead of the writer thread if
+     * anything unexpected is thrown.
+     */
+    private void writeBatchSafely(List<PendingSale> batch) {
+        try {
+            writeBatch(batch);
+        } catch (Throwable t) {
+            LOGGER.log(Level.SEVERE, "Group commit of " + batch.size() + " sales failed unexpectedly", t);
+            for (PendingSale pending : batch) {
+                if (pending.future.completeExceptionally(t)) {
+                    salesFailed.increment();
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingSale> batch) {
+        List<Sale> sales = new ArrayList<>(batch.size());
+        for (PendingSale pending : batch) {
+            sales.add(pending.sale);
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                int[] ids = delegate.insertAll(conn, sales);
+                conn.commit();
+
+                for (int i = 0; i < ids.length; i++) {
+                    sales.get(i).setId(ids[i]);
+                    batch.get(i).future.complete(sales.get(i));
+                }
+                batchCount.increment();
+                batchedSales.add(ids.length);
+                salesCommitted.add(ids.length);
+                return;
+
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING,
+                    "Group commit of " + batch.size() + " sales failed; retrying individually", e);
+        }
+
+        for (PendingSale pending : batch) {
+            writeSingle(pending);
+        }
+    }
+
+    private void writeSingle(PendingSale pending) {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                int id = delegate.insert(conn, pending.sale);
+                conn.commit();
+
+                pending.sale.setId(id);
+                pending.future.complete(pending.sale);
+                salesCommitted.increment();
+
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            salesFailed.increment();
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Stops accepting sales, commits everything already queued and waits
+     * for the writer thread to finish. Sales still queued after that fail.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            // The writer is still running and will finish the queue itself
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        List<PendingSale> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (PendingSale pending : leftover) {
+            if (pending.future.completeExceptionally(
+                    new IllegalStateException("GroupCommitSaleRepository is closed."))) {
+                salesFailed.increment();
+            }
+        }
+    }
+
+    // ----- Metrics -----
+
+    /** @return Number of group commits written */
+    public long getBatchCount() { return batchCount.sum(); }
+
+    /** @return Number of sales committed */
+    public long getSalesCommitted() { return salesCommitted.sum(); }
+
+    /** @return Number of sales that could not be saved */
+    public long getSalesFailed() { return salesFailed.sum(); }
+
+    /** @return Sales waiting for the next group commit */
+    public int getQueueDepth() { return queue.size(); }
+
+    /** @return Average number of sales per group commit */
+    public double getAverageBatchSize() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0.0 : (double) batchedSales.sum() / batches;
+    }
+
+    /**
+     * A queued sale and the future its caller is waiting on.
+     */
+    private static final class PendingSale {
+        final Sale sale;
+        final long queuedAt = System.nanoTime();
+        final CompletableFuture<Sale> future = new CompletableFuture<>();
+
+        PendingSale(Sale sale) {
+            this.sale = sale;
+        }
+    }
+}
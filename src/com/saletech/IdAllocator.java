@@ -0,0 +1,193 @@
+package com.saletech;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+/**
+ * IdAllocator
+ *
+ * Hands out primary keys for one table from blocks reserved in the
+ * id_blocks table (hi-lo allocation). Reserving a block costs one short
+ * transaction; every id inside the block is then handed out from memory
+ * with a single atomic increment, with no lock and no database call.
+ *
+ * Knowing ids before INSERT means a parent row and its children can be
+ * written in the same batch, without RETURN_GENERATED_KEYS.
+ *
+ * Ids from a block that is never used (for example after a restart or a
+ * rolled-back transaction) are skipped, so ids are unique and increasing
+ * per allocator but may have gaps.
+ *
+ * Expected table:
+ *
+ *   CREATE TABLE id_blocks (
+ *       name    VARCHAR(64) PRIMARY KEY,
+ *       next_id INT NOT NULL
+ *   );
+ *
+ * A missing row is created on first use, starting after MAX(id) of the table.
+ *
+ * Callers usually ask for ids while holding a connection of their own, in
+ * the middle of a transaction. Blocks are therefore reserved on a separate
+ * DataSource, not the pool those callers borrow from; otherwise a refill
+ * would wait for a connection that only the waiting callers can return.
+ */
+public class IdAllocator {
+
+    private final DataSource dataSource;
+    private final String tableName;
+    private final int blockSize;
+
+    // Held while reserving a block. A ReentrantLock rather than synchronized,
+    // so a virtual thread waiting on the database does not pin its carrier.
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    // Block currently being handed out; replaced when exhausted
+    private final AtomicReference<Block> current = new AtomicReference<>(new Block(0, 0));
+
+    /**
+     * @param dataSource Source of connections for reserving blocks; must not
+     *                   be the pool whose connections callers hold while
+     *                   asking for ids
+     * @param tableName  Table whose ids are allocated; also the id_blocks row name
+     * @param blockSize  Number of ids reserved per database round trip
+     */
+    public IdAllocator(DataSource dataSource, String tableName, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be > 0");
+        }
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the next unused id.
+     *
+     * @throws SQLException if a new block had to be reserved and that failed
+     */
+    public int nextId() throws SQLException {
+        while (true) {
+            Block block = current.get();
+            int id = block.next.getAndIncrement();
+            if (id < block.end) {
+                return id;
+            }
+            refill(block);
+        }
+    }
+
+    /**
+     * Returns count unused ids in increasing order.
+     *
+     * @throws SQLException if a new block had to be reserved and that failed
+     */
+    public int[] nextIds(int count) throws SQLException {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces an exhausted block. Only one thread reserves; threads that
+     * arrive later see the new block and return without a database call.
+     */
+    private void refill(Block exhausted) throws SQLException {
+        refillLock.lock();
+        try {
+            if (current.get() != exhausted) {
+                return;
+            }
+            int start = reserveBlock();
+            current.set(new Block(start, start + blockSize));
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    /**
+     * Advances next_id by one block in its own transaction, so the block
+     * stays reserved even if the caller's transaction rolls back.
+     *
+     * @return First id of the reserved block
+     */
+    private int reserveBlock() throws SQLException {
+        final String selectSql = "SELECT next_id FROM id_blocks WHERE name = ? FOR UPDATE";
+        final String updateSql = "UPDATE id_blocks SET next_id = ? WHERE name = ?";
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                int start;
+
+                try (PreparedStatement select = conn.prepareStatement(selectSql)) {
+                    select.setString(1, tableName);
+                    try (ResultSet rs = select.executeQuery()) {
+                        start = rs.next() ? rs.getInt(1) : insertStartRow(conn);
+                    }
+                }
+
+                try (PreparedStatement update = conn.prepareStatement(updateSql)) {
+                    update.setInt(1, start + blockSize);
+                    update.setString(2, tableName);
+                    update.executeUpdate();
+                }
+
+                conn.commit();
+                return start;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Creates the id_blocks row for this table, starting after the highest
+     * id already in use.
+     */
+    private int insertStartRow(Connection conn) throws SQLException {
+        // tableName comes from code, never from user input
+        final String maxSql = "SELECT COALESCE(MAX(id), 0) + 1 FROM " + tableName;
+        final String insertSql = "INSERT INTO id_blocks (name, next_id) VALUES (?, ?)";
+
+        int start;
+        try (PreparedStatement max = conn.prepareStatement(maxSql);
+             ResultSet rs = max.executeQuery()) {
+            rs.next();
+            start = rs.getInt(1);
+        }
+
+        try (PreparedStatement insert = conn.prepareStatement(insertSql)) {
+            insert.setString(1, tableName);
+            insert.setInt(2, start);
+            insert.executeUpdate();
+        }
+
+        return start;
+    }
+
+    /**
+     * A reserved range of ids [next, end).
+     */
+    private static final class Block {
+        final AtomicInteger next;
+        final int end;
+
+        Block(int start, int end) {
+            this.next = new AtomicInteger(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.saletech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImportResult
+ *
+ * Counters and rejected-row messages collected during a bulk import.
+ * Only the first MAX_REJECTION_MESSAGES messages are kept so a badly
+ * formatted file cannot exhaust memory; the rejected count is always exact.
+ */
+public class ImportResult {
+
+    private static final int MAX_REJECTION_MESSAGES = 1000;
+
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private long elapsedNanos;
+    private final List<String> rejections = new ArrayList<>();
+
+    void rowRead() {
+        rowsRead++;
+    }
+
+    void imported(long rows) {
+        rowsImported += rows;
+    }
+
+    void rejected(String message) {
+        rowsRejected++;
+        if (rejections.size() < MAX_REJECTION_MESSAGES) {
+            rejections.add(message);
+        }
+    }
+
+    void rejected(long rows, String message) {
+        rowsRejected += rows;
+        if (rejections.size() < MAX_REJECTION_MESSAGES) {
+            rejections.add(message);
+        }
+    }
+
+    void finished(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** @return Data rows read from the input (header excluded) */
+    public long getRowsRead() { return rowsRead; }
+
+    /** @return Rows stored in the repository */
+    public long getRowsImported() { return rowsImported; }
+
+    /** @return Rows that could not be parsed or stored */
+    public long getRowsRejected() { return rowsRejected; }
+
+    /** @return Why rows were rejected (first MAX_REJECTION_MESSAGES only) */
+    public List<String> getRejections() { return Collections.unmodifiableList(rejections); }
+
+    /** @return Wall-clock time of the import in milliseconds */
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    /** @return Imported rows per second */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rowsImported * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Import[read=%d, imported=%d, rejected=%d, elapsed=%dms, rate=%.0f rows/s]",
+                rowsRead, rowsImported, rowsRejected, getElapsedMillis(), getRowsPerSecond());
+    }
+}
@@ -1,48 +1,153 @@
 package com.saletech;
 
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * InMemoryProductRepository
  *
- * This class is a temporary, in-memory implementation of the
- * ProductRepository interface. It stores product data inside a
- * simple ArrayList during program execution.
+ * In-memory implementation of the ProductRepository interface. It lets the
+ * program run without a database and is safe to share between threads.
  *
- * In Module 5, this class will be replaced (or supplemented) by a
- * database-backed repository that performs real SQL operations.
- * For now, it allows the program to run without requiring a database.
+ * Products are indexed by id in an IntObjectHashMap, so findById is O(1)
+ * and never boxes the id. A TrigramIndex answers substring searches, and a
+ * TreeMap keeps products sorted by id for findAll and keyset paging. The id
+ * index and sorted map are guarded by a read/write lock: any number of
+ * readers may run at once, writers are exclusive.
+ *
+ * Stock changes during checkout should use decrementStock, which is an
+ * atomic compare-and-set on the product itself and does not take the
+ * write lock.
  */
 public class InMemoryProductRepository implements ProductRepository {
 
-    // Internal list that holds all Product objects
-    private final List<Product> products = new ArrayList<>();
+    // Id index for O(1) lookups
+    private final IntObjectHashMap<Product> index = new IntObjectHashMap<>();
+
+    // All products sorted by id, for findAll and findPage
+    private final TreeMap<Integer, Product> byId = new TreeMap<>();
+
+    // Substring index over name and manufacturer
+    private final TrigramIndex searchIndex = new TrigramIndex();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
 
     /**
      * Returns a copy of all products in the repository.
      * A new list is returned to prevent outside code from directly
-     * modifying the internal product list (encapsulation).
+     * modifying the internal product map (encapsulation).
      *
-     * @return List of all products
+     * @return List of all products, ordered by id
      */
     @Override
     public List<Product> findAll() {
-        return new ArrayList<>(products);
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(byId.values());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 
     /**
-     * Finds a product by its ID using Java Streams.
+     * Returns the products that follow afterId in id order.
+     *
+     * @param afterId Only products with a greater id are returned
+     * @param limit   Maximum number of products in the page
+     * @return Products ordered by id
+     */
+    @Override
+    public List<Product> findPage(int afterId, int limit) {
+        List<Product> page = new ArrayList<>(Math.min(limit, STREAM_PAGE_SIZE));
+
+        lock.readLock().lock();
+        try {
+            for (Product p : byId.tailMap(afterId, false).values()) {
+                if (page.size() >= limit) {
+                    break;
+                }
+                page.add(p);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return page;
+    }
+
+
+    /**
+     * Aggregates in one pass over the id index under the read lock,
+     * without copying the products.
+     */
+    @Override
+    public InventoryStats getInventoryStats() {
+        lock.readLock().lock();
+        try {
+            return InventoryStats.of(byId.values().iterator());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Groups in one pass over the id index under the read lock.
+     */
+    @Override
+    public List<InventoryStats> getInventoryStatsByManufacturer() {
+        lock.readLock().lock();
+        try {
+            return InventoryStats.byManufacturer(byId.values().iterator());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Finds a product by its ID using the hash index.
      *
      * @param id Product ID to search for
      * @return Optional containing the product if found, otherwise empty
      */
     @Override
     public Optional<Product> findById(int id) {
-        return products.stream()
-                .filter(p -> p.getId() == id)
-                .findFirst();
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(index.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Looks up every id in the hash index under one read lock.
+     *
+     * @param ids Product IDs to search for
+     * @return Map of id to product for every id that was found
+     */
+    @Override
+    public Map<Integer, Product> findByIds(Collection<Integer> ids) {
+        Map<Integer, Product> found = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            for (int id : ids) {
+                Product p = index.get(id);
+                if (p != null) {
+                    found.put(id, p);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return found;
     }
 
 
@@ -55,15 +160,32 @@ public class InMemoryProductRepository implements ProductRepository {
      */
     @Override
     public List<Product> searchByNameOrManufacturer(String term) {
-        String t = term.toLowerCase();
-        List<Product> result = new ArrayList<>();
-
-        // Manual loop for clarity and compatibility with older Java styles
-        for (Product p : products) {
-            if (p.getName().toLowerCase().contains(t)
-                    || p.getManufacturer().toLowerCase().contains(t)) {
-                result.add(p);
+        return searchByNameOrManufacturer(term, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Searches using the trigram index instead of scanning every product.
+     *
+     * @param term  Search term typed by the user
+     * @param limit Maximum number of products to return
+     * @return List of matching products in the order they were saved
+     */
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term, int limit) {
+        int[] ids = searchIndex.search(term, limit);
+        List<Product> result = new ArrayList<>(ids.length);
+
+        lock.readLock().lock();
+        try {
+            for (int id : ids) {
+                Product p = index.get(id);
+                if (p != null) {
+                    result.add(p);
+                }
             }
+        } finally {
+            lock.readLock().unlock();
         }
 
         return result;
@@ -71,15 +193,43 @@ public class InMemoryProductRepository implements ProductRepository {
 
 
     /**
-     * Adds a new product to the repository.
-     * Currently no duplicate checking is performed since IDs are
-     * uniquely assigned inside Product objects.
+     * Adds a product to the repository. Saving a product whose id already
+     * exists replaces the stored product.
      *
      * @param product Product to store
      */
     @Override
     public void save(Product product) {
-        products.add(product);
+        lock.writeLock().lock();
+        try {
+            index.put(product.getId(), product);
+            byId.put(product.getId(), product);
+            searchIndex.add(product.getId(), product.getName(), product.getManufacturer());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Adds many products under a single write lock.
+     *
+     * @param products Products to store
+     * @return Number of products stored
+     */
+    @Override
+    public int saveAll(List<Product> products) {
+        lock.writeLock().lock();
+        try {
+            for (Product product : products) {
+                index.put(product.getId(), product);
+                byId.put(product.getId(), product);
+                searchIndex.add(product.getId(), product.getName(), product.getManufacturer());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return products.size();
     }
 
 
@@ -94,4 +244,20 @@ public class InMemoryProductRepository implements ProductRepository {
     public void updateQuantity(int id, int newQty) {
         findById(id).ifPresent(p -> p.setQuantityInStock(newQty));
     }
+
+
+    /**
+     * Atomically removes units from a product's stock if enough are available.
+     * Many shoppers may call this at once for the same product; the
+     * compare-and-set on the product guarantees stock never goes negative.
+     *
+     * @param id     Product ID to modify
+     * @param amount Number of units to remove
+     * @return true if the stock was decremented, false if the product is
+     *         missing or does not have enough units
+     */
+    public boolean decrementStock(int id, int amount) {
+        Optional<Product> product = findById(id);
+        return product.isPresent() && product.get().tryDecrementStock(amount);
+    }
 }
@@ -0,0 +1,236 @@
+package com.saletech;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * IndexedSearchProductRepository
+ *
+ * Wraps any ProductRepository and answers searchByNameOrManufacturer from
+ * an in-memory TrigramIndex instead of a LIKE '%term%' table scan.
+ *
+ * The index is built by streaming the catalog on the first search; if that
+ * fails the search throws and the next one tries again. start() rebuilds it
+ * every rebuildInterval, which picks up products added or removed by other
+ * processes, and rebuild() does the same on demand. A new index is built on
+ * the side and swapped in, so searches never see a half-built one.
+ *
+ * save and saveAll index only what the wrapped repository actually stored.
+ * Quantity updates do not change indexed text, so they are passed straight
+ * through; search results are resolved through the wrapped repository and
+ * always carry current stock.
+ */
+public class IndexedSearchProductRepository implements ProductRepository, AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(IndexedSearchProductRepository.class.getName());
+
+    private final ProductRepository delegate;
+    private final long rebuildIntervalMillis;
+
+    // Null until the first build succeeds, then replaced by each rebuild
+    private volatile TrigramIndex index;
+    // Products saved while a rebuild streams the catalog, added to the new
+    // index before it is swapped in. Guarded by "this"; null between rebuilds.
+    private List<Product> savedDuringRebuild;
+    // Held while the catalog is streamed, so only one build runs at a time
+    private final Object rebuildLock = new Object();
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param delegate        Repository that owns the data
+     * @param rebuildInterval Time between rebuilds once started
+     */
+    public IndexedSearchProductRepository(ProductRepository delegate, Duration rebuildInterval) {
+        this.delegate = delegate;
+        this.rebuildIntervalMillis = rebuildInterval.toMillis();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "search-index-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts rebuilding the index every rebuildInterval.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::rebuildQuietly,
+                rebuildIntervalMillis, rebuildIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Re-reads the whole catalog into a new index and swaps it in. The old
+     * index keeps answering searches until then.
+     *
+     * @throws RepositoryException if the catalog cannot be read; the old index is kept
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            rebuildLocked();
+        }
+    }
+
+    private void rebuildLocked() {
+        synchronized (this) {
+            savedDuringRebuild = new ArrayList<>();
+        }
+        try {
+            TrigramIndex fresh = new TrigramIndex();
+            delegate.streamAll().forEach(p -> fresh.add(p.getId(), p.getName(), p.getManufacturer()));
+            synchronized (this) {
+                for (Product p : savedDuringRebuild) {
+                    fresh.add(p.getId(), p.getName(), p.getManufacturer());
+                }
+                index = fresh;
+            }
+        } finally {
+            synchronized (this) {
+                savedDuringRebuild = null;
+            }
+        }
+    }
+
+    private TrigramIndex loadedIndex() {
+        TrigramIndex current = index;
+        if (current == null) {
+            synchronized (rebuildLock) {
+                if (index == null) {
+                    rebuildLocked();
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Search index rebuild failed; keeping the previous index.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Product> findPage(int afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public InventoryStats getInventoryStats() {
+        return delegate.getInventoryStats();
+    }
+
+    @Override
+    public List<InventoryStats> getInventoryStatsByManufacturer() {
+        return delegate.getInventoryStatsByManufacturer();
+    }
+
+    @Override
+    public Optional<Product> findById(int id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public Map<Integer, Product> findByIds(Collection<Integer> ids) {
+        return delegate.findByIds(ids);
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term) {
+        return searchByNameOrManufacturer(term, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term, int limit) {
+        int[] ids = loadedIndex().search(term, limit);
+        List<Integer> idList = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            idList.add(id);
+        }
+
+        // One batched lookup, then restore index order
+        Map<Integer, Product> found = delegate.findByIds(idList);
+        List<Product> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Product p = found.get(id);
+            if (p != null) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(Product product) {
+        // Throws if the product was not stored, so it is never indexed
+        delegate.save(product);
+        indexProduct(product);
+    }
+
+    /**
+     * Indexes the products if all were stored; otherwise reads back which
+     * ones were and indexes those.
+     */
+    @Override
+    public int saveAll(List<Product> products) {
+        int stored = delegate.saveAll(products);
+        if (stored == products.size()) {
+            products.forEach(this::indexProduct);
+        } else if (stored > 0) {
+            List<Integer> ids = new ArrayList<>(products.size());
+            for (Product p : products) {
+                ids.add(p.getId());
+            }
+            delegate.findByIds(ids).values().forEach(this::indexProduct);
+        }
+        return stored;
+    }
+
+    private synchronized void indexProduct(Product p) {
+        TrigramIndex current = index;
+        if (current != null) {
+            current.add(p.getId(), p.getName(), p.getManufacturer());
+        }
+        if (savedDuringRebuild != null) {
+            savedDuringRebuild.add(p);
+        }
+    }
+
+    @Override
+    public void updateQuantity(int id, int newQuantity) {
+        delegate.updateQuantity(id, newQuantity);
+    }
+
+    @Override
+    public boolean updateQuantities(Map<Integer, Integer> quantities) {
+        return delegate.updateQuantities(quantities);
+    }
+
+    /** @return Number of products in the search index, 0 before the first build */
+    public int getIndexedCount() {
+        TrigramIndex current = index;
+        return current == null ? 0 : current.size();
+    }
+}
@@ -0,0 +1,59 @@
+package com.saletech;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * InstrumentedCustomerRepository
+ *
+ * Wraps any CustomerRepository and records the latency, row count and
+ * failures of every call in a RepositoryMetrics. A customer that comes
+ * back without an id counts as a failed save.
+ */
+public class InstrumentedCustomerRepository implements CustomerRepository {
+
+    private final CustomerRepository delegate;
+    private final RepositoryMetrics metrics;
+
+    /**
+     * @param delegate Repository being measured
+     * @param metrics  Where the measurements go
+     */
+    public InstrumentedCustomerRepository(CustomerRepository delegate, RepositoryMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Optional<Customer> findById(int id) {
+        return metrics.record("findById", () -> delegate.findById(id), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Optional<Customer> findByEmail(String email) {
+        return metrics.record("findByEmail", () -> delegate.findByEmail(email),
+                r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public List<Customer> findAll() {
+        return metrics.record("findAll", delegate::findAll, List::size);
+    }
+
+    @Override
+    public List<Customer> findPage(int afterId, int limit) {
+        return metrics.record("findPage", () -> delegate.findPage(afterId, limit), List::size);
+    }
+
+    @Override
+    public Customer createOrGetByEmail(String name, String email) {
+        return metrics.record("createOrGetByEmail", () -> delegate.createOrGetByEmail(name, email),
+                c -> 1, c -> c.getId() <= 0);
+    }
+
+    @Override
+    public List<Customer> createOrGetAllByEmail(List<Customer> customers) {
+        return metrics.record("createOrGetAllByEmail", () -> delegate.createOrGetAllByEmail(customers),
+                List::size, saved -> saved.stream().anyMatch(c -> c.getId() <= 0));
+    }
+}
@@ -0,0 +1,95 @@
+package com.saletech;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * InstrumentedProductRepository
+ *
+ * Wraps any ProductRepository and records the latency, row count and
+ * failures of every call in a RepositoryMetrics. save and updateQuantity
+ * count as errors when they throw; saveAll and updateQuantities when they
+ * report that not everything was stored. streamAll is not overridden, so
+ * each page it loads is recorded as a findPage call.
+ */
+public class InstrumentedProductRepository implements ProductRepository {
+
+    private final ProductRepository delegate;
+    private final RepositoryMetrics metrics;
+
+    /**
+     * @param delegate Repository being measured
+     * @param metrics  Where the measurements go
+     */
+    public InstrumentedProductRepository(ProductRepository delegate, RepositoryMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return metrics.record("findAll", delegate::findAll, List::size);
+    }
+
+    @Override
+    public List<Product> findPage(int afterId, int limit) {
+        return metrics.record("findPage", () -> delegate.findPage(afterId, limit), List::size);
+    }
+
+    @Override
+    public InventoryStats getInventoryStats() {
+        return metrics.record("getInventoryStats", delegate::getInventoryStats, r -> 1);
+    }
+
+    @Override
+    public List<InventoryStats> getInventoryStatsByManufacturer() {
+        return metrics.record("getInventoryStatsByManufacturer", delegate::getInventoryStatsByManufacturer,
+                List::size);
+    }
+
+    @Override
+    public Optional<Product> findById(int id) {
+        return metrics.record("findById", () -> delegate.findById(id), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Map<Integer, Product> findByIds(Collection<Integer> ids) {
+        return metrics.record("findByIds", () -> delegate.findByIds(ids), Map::size);
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term) {
+        return metrics.record("search", () -> delegate.searchByNameOrManufacturer(term), List::size);
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term, int limit) {
+        return metrics.record("search", () -> delegate.searchByNameOrManufacturer(term, limit),
+                List::size);
+    }
+
+    @Override
+    public void save(Product product) {
+        metrics.record("save", () -> delegate.save(product));
+    }
+
+    @Override
+    public int saveAll(List<Product> products) {
+        int requested = products.size();
+        return metrics.record("saveAll", () -> delegate.saveAll(products),
+                stored -> stored, stored -> stored < requested);
+    }
+
+    @Override
+    public void updateQuantity(int id, int newQuantity) {
+        metrics.record("updateQuantity", () -> delegate.updateQuantity(id, newQuantity));
+    }
+
+    @Override
+    public boolean updateQuantities(Map<Integer, Integer> quantities) {
+        return metrics.record("updateQuantities", () -> delegate.updateQuantities(quantities),
+                applied -> applied ? quantities.size() : 0, applied -> !applied);
+    }
+}
@@ -0,0 +1,71 @@
+package com.saletech;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * InstrumentedSaleRepository
+ *
+ * Wraps any SaleRepository and records the latency, row count and failures
+ * of every call in a RepositoryMetrics. A sale that comes back without an
+ * id counts as a failed save. saveAsync is timed until its future
+ * completes, so with GroupCommitSaleRepository it includes the wait for
+ * the batch commit.
+ */
+public class InstrumentedSaleRepository implements SaleRepository {
+
+    private final SaleRepository delegate;
+    private final RepositoryMetrics metrics;
+
+    /**
+     * @param delegate Repository being measured
+     * @param metrics  Where the measurements go
+     */
+    public InstrumentedSaleRepository(SaleRepository delegate, RepositoryMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Sale save(Sale sale) {
+        return metrics.record("save", () -> delegate.save(sale),
+                saved -> saved.getLines().size() + 1, saved -> saved.getId() <= 0);
+    }
+
+    @Override
+    public CompletableFuture<Sale> saveAsync(Sale sale) {
+        long start = System.nanoTime();
+        return delegate.saveAsync(sale).whenComplete((saved, error) -> {
+            boolean failed = error != null || saved.getId() <= 0;
+            int rows = failed ? 0 : saved.getLines().size() + 1;
+            metrics.recordElapsed("saveAsync", System.nanoTime() - start, rows, failed);
+        });
+    }
+
+    @Override
+    public Optional<Sale> findById(int id) {
+        return metrics.record("findById", () -> delegate.findById(id),
+                r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Map<Integer, Sale> findByIds(Collection<Integer> ids) {
+        return metrics.record("findByIds", () -> delegate.findByIds(ids), Map::size);
+    }
+
+    @Override
+    public List<SaleSummary> findRecentSummaries(int limit) {
+        return metrics.record("findRecentSummaries", () -> delegate.findRecentSummaries(limit),
+                List::size);
+    }
+
+    @Override
+    public List<SaleSummary> findSummariesPage(LocalDateTime afterDate, int afterId, LocalDateTime to, int limit) {
+        return metrics.record("findSummariesPage", () -> delegate.findSummariesPage(afterDate, afterId, to, limit),
+                List::size);
+    }
+}
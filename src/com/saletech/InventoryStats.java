@@ -0,0 +1,139 @@
+package com.saletech;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * InventoryStats
+ *
+ * Totals over a set of products: SKU count, units in stock, stock value
+ * (price x quantity) and the smallest and largest quantity and price.
+ * Returned by ProductRepository.getInventoryStats for the whole catalog and
+ * by getInventoryStatsByManufacturer for each manufacturer. All values are
+ * 0 when there are no products.
+ */
+public class InventoryStats {
+
+    // Sorts by-manufacturer results the way the database does, null first
+    static final Comparator<InventoryStats> BY_MANUFACTURER =
+            Comparator.comparing(InventoryStats::getManufacturer, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final String manufacturer;
+    private final long skuCount;
+    private final long totalUnits;
+    private final double stockValue;
+    private final int minQuantity;
+    private final int maxQuantity;
+    private final double minPrice;
+    private final double maxPrice;
+
+    public InventoryStats(String manufacturer, long skuCount, long totalUnits, double stockValue,
+                          int minQuantity, int maxQuantity, double minPrice, double maxPrice) {
+        this.manufacturer = manufacturer;
+        this.skuCount = skuCount;
+        this.totalUnits = totalUnits;
+        this.stockValue = stockValue;
+        this.minQuantity = minQuantity;
+        this.maxQuantity = maxQuantity;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+
+    /**
+     * Computes whole-catalog stats in one pass.
+     */
+    static InventoryStats of(Iterator<Product> products) {
+        Accumulator all = new Accumulator(null);
+        while (products.hasNext()) {
+            all.add(products.next());
+        }
+        return all.toStats();
+    }
+
+    /**
+     * Computes per-manufacturer stats in one pass.
+     *
+     * @return One entry per manufacturer, ordered by manufacturer, null first
+     */
+    static List<InventoryStats> byManufacturer(Iterator<Product> products) {
+        Map<String, Accumulator> groups = new HashMap<>();
+        while (products.hasNext()) {
+            Product p = products.next();
+            groups.computeIfAbsent(p.getManufacturer(), Accumulator::new).add(p);
+        }
+        List<InventoryStats> result = new ArrayList<>(groups.size());
+        for (Accumulator group : groups.values()) {
+            result.add(group.toStats());
+        }
+        result.sort(BY_MANUFACTURER);
+        return result;
+    }
+
+    // Null for whole-catalog stats
+    public String getManufacturer() { return manufacturer; }
+
+    public long getSkuCount() { return skuCount; }
+
+    public long getTotalUnits() { return totalUnits; }
+
+    public double getStockValue() { return stockValue; }
+
+    public int getMinQuantity() { return minQuantity; }
+
+    public int getMaxQuantity() { return maxQuantity; }
+
+    public double getMinPrice() { return minPrice; }
+
+    public double getMaxPrice() { return maxPrice; }
+
+    @Override
+    public String toString() {
+        return "Inventory[" + (manufacturer == null ? "" : "manufacturer=" + manufacturer + ", ") +
+                "skus=" + skuCount + ", units=" + totalUnits +
+                ", value=" + String.format("%.2f", stockValue) +
+                ", qty=" + minQuantity + ".." + maxQuantity +
+                ", price=" + String.format("%.2f..%.2f", minPrice, maxPrice) + "]";
+    }
+
+    /**
+     * Running totals for one group of products.
+     */
+    static final class Accumulator {
+        private final String manufacturer;
+        private long skuCount;
+        private long totalUnits;
+        private double stockValue;
+        private int minQuantity = Integer.MAX_VALUE;
+        private int maxQuantity = Integer.MIN_VALUE;
+        private double minPrice = Double.MAX_VALUE;
+        private double maxPrice = -Double.MAX_VALUE;
+
+        Accumulator(String manufacturer) {
+            this.manufacturer = manufacturer;
+        }
+
+        void add(Product p) {
+            int qty = p.getQuantityInStock();
+            double price = p.getPrice();
+            skuCount++;
+            totalUnits += qty;
+            stockValue += price * qty;
+            minQuantity = Math.min(minQuantity, qty);
+            maxQuantity = Math.max(maxQuantity, qty);
+            minPrice = Math.min(minPrice, price);
+            maxPrice = Math.max(maxPrice, price);
+        }
+
+        InventoryStats toStats() {
+            if (skuCount == 0) {
+                return new InventoryStats(manufacturer, 0, 0, 0.0, 0, 0, 0.0, 0.0);
+            }
+            return new InventoryStats(manufacturer, skuCount, totalUnits, stockValue,
+                    minQuantity, maxQuantity, minPrice, maxPrice);
+        }
+    }
+}
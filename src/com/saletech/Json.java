@@ -0,0 +1,275 @@
+package com.saletech;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Json
+ *
+ * Just enough JSON for the HTTP API, without a library dependency:
+ * a streaming Writer for responses, and a parser for request bodies that
+ * are a single flat object of strings, numbers, booleans and nulls.
+ */
+final class Json {
+
+    private Json() { }
+
+    /**
+     * Parses a flat JSON object. Nested objects and arrays are rejected.
+     *
+     * @param text Request body
+     * @return Field name to String, Double, Boolean or null
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    static Map<String, Object> parseObject(String text) {
+        Parser p = new Parser(text);
+        Map<String, Object> fields = new LinkedHashMap<>();
+
+        p.skipWhitespace();
+        p.expect('{');
+        p.skipWhitespace();
+        if (p.peek() == '}') {
+            p.pos++;
+        } else {
+            while (true) {
+                p.skipWhitespace();
+                String name = p.readString();
+                p.skipWhitespace();
+                p.expect(':');
+                p.skipWhitespace();
+                fields.put(name, p.readValue());
+                p.skipWhitespace();
+                if (p.peek() == ',') {
+                    p.pos++;
+                    continue;
+                }
+                p.expect('}');
+                break;
+            }
+        }
+        p.skipWhitespace();
+        if (p.pos != text.length()) {
+            throw new IllegalArgumentException("Unexpected text after JSON object");
+        }
+        return fields;
+    }
+
+    /**
+     * Appends JSON to a StringBuilder, inserting commas automatically.
+     */
+    static final class Writer {
+        private final StringBuilder out = new StringBuilder(256);
+        // True when the next value in the current object or array needs a comma first
+        private boolean needsComma;
+
+        Writer beginObject() {
+            separator();
+            out.append('{');
+            needsComma = false;
+            return this;
+        }
+
+        Writer endObject() {
+            out.append('}');
+            needsComma = true;
+            return this;
+        }
+
+        Writer beginArray() {
+            separator();
+            out.append('[');
+            needsComma = false;
+            return this;
+        }
+
+        Writer endArray() {
+            out.append(']');
+            needsComma = true;
+            return this;
+        }
+
+        Writer name(String name) {
+            separator();
+            quote(name);
+            out.append(':');
+            needsComma = false;
+            return this;
+        }
+
+        Writer value(String value) {
+            separator();
+            if (value == null) {
+                out.append("null");
+            } else {
+                quote(value);
+            }
+            needsComma = true;
+            return this;
+        }
+
+        Writer value(long value) {
+            separator();
+            out.append(value);
+            needsComma = true;
+            return this;
+        }
+
+        Writer value(double value) {
+            separator();
+            if (Double.isFinite(value)) {
+                out.append(value);
+            } else {
+                out.append("null");
+            }
+            needsComma = true;
+            return this;
+        }
+
+        Writer value(boolean value) {
+            separator();
+            out.append(value);
+            needsComma = true;
+            return this;
+        }
+
+        /** Writes a money amount with exactly two decimals. */
+        Writer money(double value) {
+            separator();
+            out.append(String.format(Locale.ROOT, "%.2f", value));
+            needsComma = true;
+            return this;
+        }
+
+        private void separator() {
+            if (needsComma) {
+                out.append(',');
+            }
+        }
+
+        private void quote(String s) {
+            out.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> out.append("\\\"");
+                    case '\\' -> out.append("\\\\");
+                    case '\n' -> out.append("\\n");
+                    case '\r' -> out.append("\\r");
+                    case '\t' -> out.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            out.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.append(c);
+                        }
+                    }
+                }
+            }
+            out.append('"');
+        }
+
+        @Override
+        public String toString() {
+            return out.toString();
+        }
+    }
+
+    private static final class Parser {
+        final String text;
+        int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        char peek() {
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(pos);
+        }
+
+        void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at position " + pos);
+            }
+            pos++;
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        Object readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (text.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            }
+            if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                int start = pos;
+                while (pos < text.length() && "+-.eE0123456789".indexOf(text.charAt(pos)) >= 0) {
+                    pos++;
+                }
+                try {
+                    return Double.parseDouble(text.substring(start, pos));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number at position " + start);
+                }
+            }
+            throw new IllegalArgumentException("Unsupported JSON value at position " + pos);
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = peek();
+                pos++;
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = peek();
+                pos++;
+                switch (e) {
+                    case '"', '\\', '/' -> sb.append(e);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Invalid escape at position " + pos);
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw new IllegalArgumentException("Invalid escape at position " + pos);
+                        }
+                        pos += 4;
+                    }
+                    default -> throw new IllegalArgumentException("Invalid escape at position " + pos);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.saletech;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * KeysetPager
+ *
+ * Turns a "next page after this row" function into a lazy Stream. Only one
+ * page is held in memory at a time, so walking a table of any size uses
+ * constant heap.
+ *
+ * The page function receives the last row of the previous page (null for the
+ * first page) and returns the rows that follow it, for example with
+ * WHERE id > ? ORDER BY id LIMIT ?. A page shorter than pageSize ends the
+ * stream.
+ */
+final class KeysetPager {
+
+    private KeysetPager() { }
+
+    /**
+     * @param pageSize Rows requested per page
+     * @param nextPage Loads the page after the given row (null = first page)
+     * @return Lazy stream over every row
+     */
+    static <T> Stream<T> stream(int pageSize, Function<T, List<T>> nextPage) {
+        Iterator<T> iterator = new Iterator<>() {
+            // Loaded on first use so creating the stream runs no query
+            private List<T> page;
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                if (page == null) {
+                    page = nextPage.apply(null);
+                }
+                if (position < page.size()) {
+                    return true;
+                }
+                if (page.size() < pageSize) {
+                    return false;
+                }
+                page = nextPage.apply(page.get(page.size() - 1));
+                position = 0;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(position++);
+            }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+}
@@ -0,0 +1,384 @@
+package com.saletech;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * LowStockIndex
+ *
+ * Every product ordered by quantity in stock, so "what is at or below n
+ * units" reads only the k matching products instead of the whole catalog.
+ *
+ * Products are keyed by (quantity, id) packed into one long in a
+ * ConcurrentSkipListMap; a low-stock query is a head map walk, and readers
+ * never take a lock. Changes arrive as a StockListener registered with
+ * DbProductRepository and CheckoutService. The whole catalog is loaded on
+ * first use and re-read every refreshInterval, which corrects anything
+ * changed outside this process.
+ *
+ * ThresholdListeners are told when a product drops to or below the alert
+ * threshold and when it is restocked above it, so nobody has to poll.
+ */
+public class LowStockIndex implements StockListener, AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(LowStockIndex.class.getName());
+
+    /**
+     * Receives threshold crossings. Called on the thread that changed the
+     * stock, after the index is updated.
+     */
+    public interface ThresholdListener {
+
+        /** The product's stock fell to or below the threshold. */
+        void belowThreshold(Product product, int threshold);
+
+        /** The product's stock rose above the threshold again. */
+        default void restocked(Product product, int threshold) { }
+    }
+
+    private final ProductRepository source;
+    private final long refreshIntervalMillis;
+
+    // (quantity, id) -> product snapshot, in stock order
+    private final ConcurrentSkipListMap<Long, Product> byQuantity = new ConcurrentSkipListMap<>();
+    // Product id -> the same snapshot
+    private final Map<Integer, Product> byId = new ConcurrentHashMap<>();
+
+    private final List<ThresholdListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile int alertThreshold;
+    private volatile boolean loaded;
+    // Held while the catalog is read; updates to single products only lock this
+    private final Object loadLock = new Object();
+    // Ids changed by live updates while a refresh runs, null otherwise; guarded by this
+    private Set<Integer> changedDuringRefresh;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder alertCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+
+    /**
+     * @param source          Repository read for the catalog; should not be cached
+     * @param alertThreshold  Stock level at or below which listeners are alerted
+     * @param refreshInterval Time between full re-reads of the catalog
+     */
+    public LowStockIndex(ProductRepository source, int alertThreshold, Duration refreshInterval) {
+        this.source = source;
+        this.alertThreshold = alertThreshold;
+        this.refreshIntervalMillis = refreshInterval.toMillis();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "low-stock-index");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts re-reading the catalog every refreshInterval.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly,
+                refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void addListener(ThresholdListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ThresholdListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getAlertThreshold() {
+        return alertThreshold;
+    }
+
+    /**
+     * Changes the alert threshold. Products already at or below the new
+     * threshold are not alerted until they change again.
+     */
+    public void setAlertThreshold(int alertThreshold) {
+        this.alertThreshold = alertThreshold;
+    }
+
+    /**
+     * @return Products with threshold units or fewer, lowest stock first
+     */
+    public List<Product> findAtOrBelow(int threshold) {
+        return findAtOrBelow(threshold, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return At most limit products with threshold units or fewer, lowest stock first
+     */
+    public List<Product> findAtOrBelow(int threshold, int limit) {
+        ensureLoaded();
+        List<Product> result = new ArrayList<>();
+        Iterator<Product> it = byQuantity.headMap(key(threshold, Integer.MAX_VALUE), true).values().iterator();
+        while (it.hasNext() && result.size() < limit) {
+            Product p = it.next();
+            result.add(snapshot(p, p.getQuantityInStock()));
+        }
+        return result;
+    }
+
+    /** @return Products in the index */
+    public int size() {
+        ensureLoaded();
+        return byId.size();
+    }
+
+    // ----- StockListener -----
+
+    @Override
+    public void productSaved(Product product) {
+        if (loaded) {
+            put(snapshot(product, product.getQuantityInStock()), true);
+        }
+    }
+
+    @Override
+    public void quantityChanged(int productId, int newQuantity) {
+        if (loaded) {
+            setQuantity(productId, newQuantity, false);
+        }
+    }
+
+    @Override
+    public void quantitySold(int productId, int quantity) {
+        if (loaded) {
+            setQuantity(productId, -quantity, true);
+        }
+    }
+
+    private void setQuantity(int productId, int value, boolean relative) {
+        Product previous;
+        Product next;
+        synchronized (this) {
+            previous = byId.get(productId);
+            if (previous != null) {
+                int quantity = relative ? previous.getQuantityInStock() + value : value;
+                next = snapshot(previous, quantity);
+                replace(next);
+                recordChange(productId);
+            } else {
+                next = null;
+            }
+        }
+
+        if (next != null) {
+            alert(previous, next);
+        } else {
+            // Not seen yet, for example inserted by another process
+            source.findById(productId).ifPresent(p -> put(snapshot(p, p.getQuantityInStock()), true));
+        }
+    }
+
+    // ----- Loading -----
+
+    /**
+     * Re-reads the whole catalog, alerting on products that crossed the
+     * threshold since they were last seen and dropping deleted ones.
+     * Called periodically by the background task.
+     *
+     * Products changed by a live update while the refresh runs keep the
+     * live value: the row read for them may predate the change, and
+     * writing it back would lose a sale or apply it twice. The next
+     * refresh picks them up.
+     */
+    public void refresh() {
+        synchronized (loadLock) {
+            refreshLocked();
+        }
+    }
+
+    private void refreshLocked() {
+        boolean alert = loaded;
+        Set<Integer> changed = new HashSet<>();
+        synchronized (this) {
+            changedDuringRefresh = changed;
+        }
+        try {
+            Set<Integer> seen = new HashSet<>();
+            Iterator<Product> products = source.streamAll().iterator();
+            while (products.hasNext()) {
+                Product p = products.next();
+                seen.add(p.getId());
+                Product previous;
+                Product next = snapshot(p, p.getQuantityInStock());
+                synchronized (this) {
+                    Product current = byId.get(p.getId());
+                    if (changed.contains(p.getId())
+                            || (current != null && current.getQuantityInStock() == p.getQuantityInStock()
+                                && Objects.equals(current.getName(), p.getName()))) {
+                        continue;
+                    }
+                    previous = replace(next);
+                }
+                if (alert) {
+                    alert(previous, next);
+                }
+            }
+            for (Integer id : new ArrayList<>(byId.keySet())) {
+                if (!seen.contains(id)) {
+                    synchronized (this) {
+                        // Saved after its page was read
+                        if (changed.contains(id)) {
+                            continue;
+                        }
+                        Product removed = byId.remove(id);
+                        if (removed != null) {
+                            byQuantity.remove(key(removed.getQuantityInStock(), id));
+                        }
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                changedDuringRefresh = null;
+            }
+        }
+        loaded = true;
+        refreshCount.increment();
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (loadLock) {
+                if (!loaded) {
+                    refreshLocked();
+                }
+            }
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Low stock index refresh failed.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // ----- Index maintenance -----
+
+    /**
+     * Replaces the product's entry and tells listeners if it crossed the
+     * alert threshold.
+     */
+    private void put(Product next, boolean alert) {
+        Product previous;
+        synchronized (this) {
+            previous = replace(next);
+            recordChange(next.getId());
+        }
+        if (alert) {
+            alert(previous, next);
+        }
+    }
+
+    /**
+     * Swaps the entry in both maps. Caller holds the lock on this.
+     *
+     * @return The entry replaced, or null
+     */
+    private Product replace(Product next) {
+        Product previous = byId.put(next.getId(), next);
+        if (previous != null) {
+            byQuantity.remove(key(previous.getQuantityInStock(), previous.getId()));
+        }
+        byQuantity.put(key(next.getQuantityInStock(), next.getId()), next);
+        return previous;
+    }
+
+    /**
+     * Marks a live change so a running refresh does not overwrite it.
+     * Caller holds the lock on this.
+     */
+    private void recordChange(int productId) {
+        if (changedDuringRefresh != null) {
+            changedDuringRefresh.add(productId);
+        }
+    }
+
+    private void alert(Product previous, Product next) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        int threshold = alertThreshold;
+        boolean wasLow = previous != null && previous.getQuantityInStock() <= threshold;
+        boolean isLow = next.getQuantityInStock() <= threshold;
+        if (isLow && !wasLow) {
+            alertCount.increment();
+            notifyListeners(snapshot(next, next.getQuantityInStock()), threshold, true);
+        } else if (wasLow && !isLow) {
+            notifyListeners(snapshot(next, next.getQuantityInStock()), threshold, false);
+        }
+    }
+
+    private void notifyListeners(Product product, int threshold, boolean low) {
+        for (ThresholdListener listener : listeners) {
+            try {
+                if (low) {
+                    listener.belowThreshold(product, threshold);
+                } else {
+                    listener.restocked(product, threshold);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Low stock listener failed for product id " + product.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Entries and results are separate copies, so neither the repositories
+     * nor callers can change a product's stock without the index knowing.
+     */
+    private static Product snapshot(Product p, int quantity) {
+        return new Product(p.getId(), p.getName(), p.getManufacturer(), p.getPrice(), quantity);
+    }
+
+    /**
+     * Orders by quantity, then id. Quantity is the signed high half, so
+     * negative stock still sorts first.
+     */
+    private static long key(int quantity, int id) {
+        return ((long) quantity << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    // ----- Metrics -----
+
+    /** @return Times a product dropped to or below the alert threshold */
+    public long getAlertCount() { return alertCount.sum(); }
+
+    /** @return Full catalog reads */
+    public long getRefreshCount() { return refreshCount.sum(); }
+
+    @Override
+    public String toString() {
+        return String.format("LowStockIndex[products=%d, threshold=%d, alerts=%d, refreshes=%d]",
+                byId.size(), alertThreshold, getAlertCount(), getRefreshCount());
+    }
+}
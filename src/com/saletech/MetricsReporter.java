@@ -0,0 +1,70 @@
+package com.saletech;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * MetricsReporter
+ *
+ * Logs a snapshot of a set of RepositoryMetrics at a fixed interval, and a
+ * final one when closed. Snapshots are logged at FINE so they go to the
+ * log file rather than the console.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(MetricsReporter.class.getName());
+
+    private final List<RepositoryMetrics> metrics;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param interval Time between snapshots
+     * @param metrics  Repositories to report on
+     */
+    public MetricsReporter(Duration interval, RepositoryMetrics... metrics) {
+        this.metrics = List.of(metrics);
+        this.intervalMillis = interval.toMillis();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts logging a snapshot every interval.
+     */
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::logSnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The current snapshot of every repository
+     */
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder("Repository metrics");
+        for (RepositoryMetrics m : metrics) {
+            sb.append(System.lineSeparator()).append(m.snapshot());
+        }
+        return sb.toString();
+    }
+
+    private void logSnapshot() {
+        LOGGER.fine(this::snapshot);
+    }
+
+    /**
+     * Stops the schedule and logs a final snapshot.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        logSnapshot();
+    }
+}
@@ -0,0 +1,394 @@
+package com.saletech;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * PooledDataSource
+ *
+ * A small bounded JDBC connection pool shared by all Db*Repository classes.
+ * Physical connections are opened once and handed out again, so a checkout
+ * no longer pays a TCP/auth handshake for every repository call.
+ *
+ * Connections handed out by getConnection() are proxies: calling close()
+ * returns the physical connection to the pool instead of closing it.
+ * Idle connections are validated before they are borrowed and evicted
+ * after they have been idle longer than the configured timeout.
+ */
+public class PooledDataSource implements DataSource, AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(PooledDataSource.class.getName());
+
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long DEFAULT_BORROW_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+
+    // One permit per connection that may be checked out at the same time
+    private final Semaphore permits;
+
+    // Idle physical connections, most recently returned first
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+
+    private final ScheduledExecutorService evictor;
+
+    private volatile boolean closed;
+
+    // ----- Metrics -----
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder validationFailureCount = new LongAdder();
+
+    /**
+     * Creates a pool with default idle and borrow timeouts.
+     *
+     * @param url      JDBC url of the database
+     * @param user     Database user
+     * @param password Database password
+     * @param maxSize  Maximum number of open connections
+     */
+    public PooledDataSource(String url, String user, String password, int maxSize) {
+        this(url, user, password, maxSize,
+                DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_BORROW_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param url                 JDBC url of the database
+     * @param user                Database user
+     * @param password            Database password
+     * @param maxSize             Maximum number of open connections
+     * @param idleTimeoutMillis   Idle connections older than this are closed
+     * @param borrowTimeoutMillis How long getConnection() waits for a free connection
+     */
+    public PooledDataSource(String url, String user, String password, int maxSize,
+                            long idleTimeoutMillis, long borrowTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jdbc-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts closing connections idle longer than the idle timeout. Until
+     * then idle connections are only dropped when they fail validation.
+     */
+    public void start() {
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException(
+                        "Timed out after " + borrowTimeoutMillis + " ms waiting for a pooled connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection.", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            Connection physical = takeValidIdle();
+            if (physical == null) {
+                physical = DriverManager.getConnection(url, user, password);
+                createdCount.increment();
+            }
+            active.incrementAndGet();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Pops idle connections until one passes validation.
+     *
+     * @return A live physical connection, or null if none are idle
+     */
+    private Connection takeValidIdle() {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            try {
+                if (candidate.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    return candidate.connection;
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Pooled connection failed validation", e);
+            }
+            validationFailureCount.increment();
+            closeQuietly(candidate.connection);
+        }
+        return null;
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Called when a borrowed connection is closed by the caller.
+     * Resets transaction state and puts the connection back on the idle deque.
+     */
+    private void release(Connection physical) {
+        try {
+            boolean reusable = !closed && !physical.isClosed();
+            if (reusable && !physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (reusable) {
+                idle.offerFirst(new IdleConnection(physical, System.nanoTime()));
+            } else {
+                closeQuietly(physical);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Discarding pooled connection that could not be reset", e);
+            closeQuietly(physical);
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes connections that have sat idle longer than the idle timeout.
+     */
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        idle.removeIf(entry -> {
+            if (entry.idleSinceNanos - cutoff < 0) {
+                closeQuietly(entry.connection);
+                evictedCount.increment();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new PooledConnectionHandler(physical));
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error closing pooled connection", e);
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones.
+     * Connections still checked out are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        IdleConnection entry;
+        while ((entry = idle.pollFirst()) != null) {
+            closeQuietly(entry.connection);
+        }
+    }
+
+    // ----- Metrics -----
+
+    /** @return Maximum number of open connections */
+    public int getMaxSize() { return maxSize; }
+
+    /** @return Number of connections currently checked out */
+    public int getActiveCount() { return active.get(); }
+
+    /** @return Number of open connections waiting in the pool */
+    public int getIdleCount() { return idle.size(); }
+
+    /** @return Number of successful getConnection() calls */
+    public long getBorrowCount() { return borrowCount.sum(); }
+
+    /** @return Number of physical connections opened */
+    public long getCreatedCount() { return createdCount.sum(); }
+
+    /** @return Number of idle connections closed by the evictor */
+    public long getEvictedCount() { return evictedCount.sum(); }
+
+    /** @return Number of idle connections that failed validation on borrow */
+    public long getValidationFailureCount() { return validationFailureCount.sum(); }
+
+    /** @return Average time callers waited for a connection, in milliseconds */
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.sum();
+        return borrows == 0 ? 0.0 : totalWaitNanos.sum() / (borrows * 1_000_000.0);
+    }
+
+    /** @return Longest time a caller waited for a connection, in milliseconds */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "PooledDataSource[active=%d, idle=%d, max=%d, borrows=%d, created=%d, "
+                        + "evicted=%d, invalid=%d, avgWait=%.3fms, maxWait=%.3fms]",
+                getActiveCount(), getIdleCount(), maxSize, getBorrowCount(), getCreatedCount(),
+                getEvictedCount(), getValidationFailureCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    // ----- DataSource boilerplate -----
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials.");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() { return null; }
+
+    @Override
+    public void setLogWriter(PrintWriter out) { }
+
+    @Override
+    public void setLoginTimeout(int seconds) { }
+
+    @Override
+    public int getLoginTimeout() { return 0; }
+
+    @Override
+    public Logger getParentLogger() { return LOGGER; }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * An idle physical connection and the time it was returned.
+     */
+    private static final class IdleConnection {
+        final Connection connection;
+        final long idleSinceNanos;
+
+        IdleConnection(Connection connection, long idleSinceNanos) {
+            this.connection = connection;
+            this.idleSinceNanos = idleSinceNanos;
+        }
+    }
+
+    /**
+     * Forwards every call to the physical connection, except close(),
+     * which hands the connection back to the pool exactly once.
+     */
+    private final class PooledConnectionHandler implements InvocationHandler {
+
+        private final Connection physical;
+        private boolean released;
+
+        PooledConnectionHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!released) {
+                        released = true;
+                        release(physical);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return released || physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "PooledConnection[" + physical + "]";
+                }
+                default -> { }
+            }
+
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
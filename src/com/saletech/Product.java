@@ -1,5 +1,7 @@
 package com.saletech;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Product
  *
@@ -22,8 +24,12 @@ public class Product {
     // Price per individual item
     private final double price;
 
-    // Number of units available in inventory
-    private int quantityInStock;
+    // Number of units available in inventory.
+    // Volatile so it can be changed with compare-and-set by concurrent shoppers.
+    private volatile int quantityInStock;
+
+    private static final AtomicIntegerFieldUpdater<Product> QUANTITY_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Product.class, "quantityInStock");
 
     /**
      * Constructor used to create a new product object.
@@ -71,6 +77,39 @@ public class Product {
         this.quantityInStock = quantity;
     }
 
+    /**
+     * Atomically sets the stock level if it still equals the expected value.
+     *
+     * @param expected Stock level the caller last read
+     * @param quantity New inventory amount
+     * @return true if the stock level was changed
+     */
+    public boolean compareAndSetQuantityInStock(int expected, int quantity) {
+        return QUANTITY_UPDATER.compareAndSet(this, expected, quantity);
+    }
+
+    /**
+     * Atomically removes units from stock, but only if enough are available.
+     * Safe to call from many threads at once; stock never goes below zero.
+     *
+     * @param amount Number of units to remove (must be > 0)
+     * @return true if the units were removed, false if stock was too low
+     */
+    public boolean tryDecrementStock(int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be > 0");
+        }
+        while (true) {
+            int current = quantityInStock;
+            if (current < amount) {
+                return false;
+            }
+            if (QUANTITY_UPDATER.compareAndSet(this, current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
     /**
      * Provides a clean string representation of the product, used when
      * printing inventory lists or search results.
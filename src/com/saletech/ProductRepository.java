@@ -1,7 +1,10 @@
 package com.saletech;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * ProductRepository
@@ -16,9 +19,19 @@ import java.util.Optional;
  * In Module 5, a database-backed version (e.g., ProductRepositoryDB)
  * will replace or supplement the in-memory version, without requiring
  * changes to the rest of the application.
+ *
+ * Reads throw RepositoryException when the store cannot be read, so a
+ * failure is never mistaken for an empty catalog. save and updateQuantity
+ * throw it too when the change could not be stored; the batch writes
+ * report failure through their return value instead.
  */
 public interface ProductRepository {
 
+    /**
+     * Page size used by streamAll.
+     */
+    int STREAM_PAGE_SIZE = 500;
+
     /**
      * Retrieves a list of all products currently stored.
      *
@@ -26,6 +39,54 @@ public interface ProductRepository {
      */
     List<Product> findAll();
 
+    /**
+     * Returns one page of products ordered by id (keyset pagination).
+     * Pass 0 for the first page and the last id of the previous page after that.
+     *
+     * @param afterId Only products with a greater id are returned
+     * @param limit   Maximum number of products in the page
+     * @return Products ordered by id
+     * @throws RepositoryException if the page cannot be read
+     */
+    List<Product> findPage(int afterId, int limit);
+
+    /**
+     * Streams every product ordered by id, loading one page at a time, so
+     * memory use stays constant no matter how large the catalog is.
+     * A page that cannot be read fails the stream with a
+     * RepositoryException rather than ending it early.
+     *
+     * @return Lazy stream of all products
+     */
+    default Stream<Product> streamAll() {
+        return KeysetPager.stream(STREAM_PAGE_SIZE,
+                last -> findPage(last == null ? 0 : last.getId(), STREAM_PAGE_SIZE));
+    }
+
+    /**
+     * Returns SKU count, total units, stock value and quantity and price
+     * ranges over the whole catalog. The default makes one pass over
+     * streamAll; implementations should compute it where the data lives.
+     *
+     * @return Catalog totals; all zero if there are no products
+     */
+    default InventoryStats getInventoryStats() {
+        try (Stream<Product> products = streamAll()) {
+            return InventoryStats.of(products.iterator());
+        }
+    }
+
+    /**
+     * Same totals as getInventoryStats, one entry per manufacturer.
+     *
+     * @return Stats ordered by manufacturer, products without one first
+     */
+    default List<InventoryStats> getInventoryStatsByManufacturer() {
+        try (Stream<Product> products = streamAll()) {
+            return InventoryStats.byManufacturer(products.iterator());
+        }
+    }
+
     /**
      * Finds a product by its unique ID.
      * Uses Optional to safely represent "found" or "not found."
@@ -35,6 +96,15 @@ public interface ProductRepository {
      */
     Optional<Product> findById(int id);
 
+    /**
+     * Finds many products at once. Ids that do not exist are simply
+     * absent from the result.
+     *
+     * @param ids Product ids to look up
+     * @return Map of id to product for every id that was found
+     */
+    Map<Integer, Product> findByIds(Collection<Integer> ids);
+
     /**
      * Searches products whose name or manufacturer matches the search term.
      * The implementation handles case-insensitive matching.
@@ -44,16 +114,59 @@ public interface ProductRepository {
      */
     List<Product> searchByNameOrManufacturer(String term);
 
+    /**
+     * Same as searchByNameOrManufacturer(String), but stops after the
+     * given number of matches.
+     *
+     * @param term  Search text entered by the user
+     * @param limit Maximum number of products to return
+     * @return List of at most limit matching products
+     */
+    List<Product> searchByNameOrManufacturer(String term, int limit);
+
     /**
      * Stores a new product in the repository.
+     *
+     * @throws RepositoryException if the product could not be stored
      */
     void save(Product product);
 
+    /**
+     * Stores many new products at once. Used by CatalogImporter; the
+     * default saves one product at a time, implementations may batch.
+     * The caller may reuse the list after this returns.
+     *
+     * @param products Products to store
+     * @return Number of products actually stored
+     */
+    default int saveAll(List<Product> products) {
+        for (Product product : products) {
+            save(product);
+        }
+        return products.size();
+    }
+
     /**
      * Updates inventory quantity for a product.
      *
      * @param id          Target product ID
      * @param newQuantity New inventory level
+     * @throws RepositoryException if the update could not be stored
      */
     void updateQuantity(int id, int newQuantity);
+
+    /**
+     * Updates inventory quantities for many products at once. Used by
+     * WriteBehindProductRepository; the default updates one product at a
+     * time, implementations may batch.
+     *
+     * @param quantities Product ID to new inventory level
+     * @return true if every update was applied
+     */
+    default boolean updateQuantities(Map<Integer, Integer> quantities) {
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            updateQuantity(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
 }
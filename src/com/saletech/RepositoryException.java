@@ -0,0 +1,19 @@
+package com.saletech;
+
+/**
+ * RepositoryException
+ *
+ * Thrown by the Db repositories when a read fails, so the failure is not
+ * mistaken for "no data" (an empty findPage would end a stream early) and
+ * decorators such as InstrumentedProductRepository can count it. Single
+ * product writes throw it too; batch writes report failures through their
+ * return values. Wraps the underlying SQLException.
+ */
+public class RepositoryException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RepositoryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,33 @@
+package com.saletech;
+
+/**
+ * RepositoryMethodStatsMXBean
+ *
+ * JMX view of one repository method, registered by RepositoryMetrics as
+ * com.saletech:type=Repository,name=(repository),method=(method).
+ * Latencies are in microseconds since the application started.
+ */
+public interface RepositoryMethodStatsMXBean {
+
+    String getRepository();
+
+    String getMethod();
+
+    long getCalls();
+
+    /** @return Calls that threw or reported failure through their return value */
+    long getErrors();
+
+    /** @return Rows returned or written by all calls */
+    long getRows();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,202 @@
+package com.saletech;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * RepositoryMetrics
+ *
+ * Call counts, error counts, rows and a latency histogram for every method
+ * of one repository, filled in by the Instrumented*Repository decorators.
+ *
+ * Each method is registered as an MXBean (see RepositoryMethodStatsMXBean)
+ * the first time it is called, so the numbers can be read with jconsole or
+ * any JMX client. snapshot() renders the same numbers as a text table for
+ * logging; MetricsReporter does that periodically.
+ */
+public class RepositoryMetrics {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(RepositoryMetrics.class.getName());
+
+    private final String repository;
+
+    // Method name -> stats, sorted so snapshots are stable
+    private final Map<String, MethodStats> methods = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param repository Name used in JMX object names and snapshots
+     */
+    public RepositoryMetrics(String repository) {
+        this.repository = repository;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    /**
+     * Times a call and records its outcome.
+     *
+     * @param method Method name
+     * @param call   The call to the wrapped repository
+     * @param rows   Rows returned or written, from the result
+     * @param failed Whether the result reports a failure (writes log
+     *               SQLExceptions and return a fallback instead of throwing)
+     * @return The call's result
+     */
+    <T> T record(String method, Supplier<T> call, ToIntFunction<? super T> rows,
+                 Predicate<? super T> failed) {
+        MethodStats stats = stats(method);
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            stats.record(System.nanoTime() - start, 0, true);
+            throw e;
+        }
+        stats.record(System.nanoTime() - start, rows.applyAsInt(result), failed.test(result));
+        return result;
+    }
+
+    /**
+     * Times a read. Reads report failures by throwing RepositoryException,
+     * so only exceptions count as errors.
+     */
+    <T> T record(String method, Supplier<T> call, ToIntFunction<? super T> rows) {
+        return record(method, call, rows, r -> false);
+    }
+
+    /**
+     * Times a call that returns nothing.
+     */
+    void record(String method, Runnable call) {
+        record(method, () -> {
+            call.run();
+            return null;
+        }, r -> 0, r -> false);
+    }
+
+    /**
+     * Records a call timed by the caller, for example one that completes
+     * asynchronously.
+     */
+    void recordElapsed(String method, long elapsedNanos, int rows, boolean failed) {
+        stats(method).record(elapsedNanos, rows, failed);
+    }
+
+    /** @return Stats of every method called so far, by name */
+    public Collection<MethodStats> getMethods() {
+        return methods.values();
+    }
+
+    /**
+     * @return One line per method with calls, errors, rows and latency
+     *         percentiles in microseconds
+     */
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(repository).append(':');
+        if (methods.isEmpty()) {
+            sb.append(" no calls");
+        }
+        for (MethodStats s : methods.values()) {
+            sb.append(String.format("%n  %-28s calls=%-8d errors=%-5d rows=%-9d "
+                            + "mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                    s.getMethod(), s.getCalls(), s.getErrors(), s.getRows(), s.getMeanMicros(),
+                    s.getP50Micros(), s.getP99Micros(), s.getP999Micros(), s.getMaxMicros()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes this repository's MXBeans from the platform MBean server.
+     */
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        List<MethodStats> registered = new ArrayList<>(methods.values());
+        for (MethodStats s : registered) {
+            try {
+                server.unregisterMBean(s.objectName);
+            } catch (JMException e) {
+                LOGGER.log(Level.FINE, "Could not unregister " + s.objectName, e);
+            }
+        }
+    }
+
+    private MethodStats stats(String method) {
+        MethodStats stats = methods.get(method);
+        if (stats != null) {
+            return stats;
+        }
+        MethodStats created = new MethodStats(repository, method);
+        stats = methods.putIfAbsent(method, created);
+        if (stats != null) {
+            return stats;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(created, created.objectName);
+        } catch (JMException e) {
+            // Metrics still work; they just are not visible over JMX
+            LOGGER.log(Level.WARNING, "Could not register " + created.objectName, e);
+        }
+        return created;
+    }
+
+    /**
+     * Numbers for one repository method.
+     */
+    public static final class MethodStats implements RepositoryMethodStatsMXBean {
+        private final String repository;
+        private final String method;
+        private final ObjectName objectName;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        MethodStats(String repository, String method) {
+            this.repository = repository;
+            this.method = method;
+            try {
+                this.objectName = new ObjectName("com.saletech:type=Repository,name="
+                        + ObjectName.quote(repository) + ",method=" + ObjectName.quote(method));
+            } catch (JMException e) {
+                throw new IllegalArgumentException("Invalid metric name " + repository + "." + method, e);
+            }
+        }
+
+        void record(long nanos, int rowCount, boolean failed) {
+            latency.record(nanos);
+            rows.add(rowCount);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        @Override public String getRepository() { return repository; }
+        @Override public String getMethod() { return method; }
+        @Override public long getCalls() { return latency.getCount(); }
+        @Override public long getErrors() { return errors.sum(); }
+        @Override public long getRows() { return rows.sum(); }
+        @Override public double getMeanMicros() { return latency.getMeanNanos() / 1000.0; }
+        @Override public double getP50Micros() { return latency.getValueAtQuantile(0.50) / 1000.0; }
+        @Override public double getP99Micros() { return latency.getValueAtQuantile(0.99) / 1000.0; }
+        @Override public double getP999Micros() { return latency.getValueAtQuantile(0.999) / 1000.0; }
+        @Override public double getMaxMicros() { return latency.getMaxNanos() / 1000.0; }
+    }
+}
@@ -1,5 +1,6 @@
 package com.saletech;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -19,13 +20,21 @@ public class Sale {
     private final Customer customer;
     private final List<SaleLine> lines = new ArrayList<>();
 
+    // Set when the sale is read back from the database, otherwise null
+    private final LocalDateTime createdAt;
+
     public Sale(Customer customer) {
         this(0, customer);
     }
 
     public Sale(int id, Customer customer) {
+        this(id, customer, null);
+    }
+
+    public Sale(int id, Customer customer, LocalDateTime createdAt) {
         this.id = id;
         this.customer = customer;
+        this.createdAt = createdAt;
     }
 
     public int getId() {
@@ -41,6 +50,10 @@ public class Sale {
         return customer;
     }
 
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
     public void addLine(Product product, int quantity, double price) {
         lines.add(new SaleLine(product, quantity, price));
     }
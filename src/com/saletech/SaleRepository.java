@@ -1,22 +1,83 @@
 package com.saletech;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * SaleRepository
  *
  * Abstraction for persisting sales transactions.
+ * Reads throw RepositoryException when the store cannot be read.
  */
 public interface SaleRepository {
 
+    /**
+     * Page size used by streamSummaries.
+     */
+    int STREAM_PAGE_SIZE = 500;
+
     /**
      * Saves the sale and its line items to the database.
      * Returns the saved Sale with an assigned database id.
      */
     Sale save(Sale sale);
 
+    /**
+     * Saves the sale without making the caller wait for the commit.
+     * The default implementation saves synchronously; see
+     * GroupCommitSaleRepository for an implementation that batches commits.
+     *
+     * @return Future completed with the saved Sale
+     */
+    default CompletableFuture<Sale> saveAsync(Sale sale) {
+        return CompletableFuture.completedFuture(save(sale));
+    }
+
+    /**
+     * Loads a stored sale with its customer, line items and products.
+     */
+    default Optional<Sale> findById(int id) {
+        return Optional.ofNullable(findByIds(List.of(id)).get(id));
+    }
+
+    /**
+     * Loads many stored sales with their customers, line items and
+     * products in a fixed number of queries, however many lines they have.
+     * Lines keep the unit price they were sold at; a product or customer
+     * shared by several sales is the same object in all of them. Ids that
+     * do not exist are simply absent from the result.
+     *
+     * @param ids Sale ids to load
+     * @return Map of id to sale for every id that was found
+     */
+    Map<Integer, Sale> findByIds(Collection<Integer> ids);
+
     /**
      * Returns a simple list of recent sales for reporting.
      */
     List<SaleSummary> findRecentSummaries(int limit);
+
+    /**
+     * Returns one page of sales made before to, ordered by (sale_date, id)
+     * and starting after the given cursor (keyset pagination). For the
+     * first page pass the start of the range and id 0; after that pass the
+     * createdAt and saleId of the last row of the previous page.
+     */
+    List<SaleSummary> findSummariesPage(LocalDateTime afterDate, int afterId, LocalDateTime to, int limit);
+
+    /**
+     * Streams every sale made from from (inclusive) to to (exclusive) in
+     * (sale_date, id) order, one page at a time, so exporting any range
+     * uses constant memory and never skips over rows with OFFSET.
+     */
+    default Stream<SaleSummary> streamSummaries(LocalDateTime from, LocalDateTime to) {
+        return KeysetPager.stream(STREAM_PAGE_SIZE, last -> last == null
+                ? findSummariesPage(from, 0, to, STREAM_PAGE_SIZE)
+                : findSummariesPage(last.getCreatedAt(), last.getSaleId(), to, STREAM_PAGE_SIZE));
+    }
 }
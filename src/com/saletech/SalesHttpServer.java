@@ -0,0 +1,669 @@
+package com.saletech;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * SalesHttpServer
+ *
+ * JSON HTTP API over the same repositories and services as the console UI,
+ * built on the JDK's com.sun.net.httpserver.
+ *
+ * Adding to a cart reserves stock in the StockLedger, so a sold-out
+ * product is refused immediately instead of at checkout.
+ *
+ * Every request runs on its own virtual thread, so thousands of clients
+ * waiting on the database or the network cost a few KB of heap each rather
+ * than a platform thread. Database concurrency is still bounded by the
+ * connection pool; requests beyond the pool size wait for a connection.
+ *
+ *   GET    /api/products?q=term&limit=n           search
+ *   GET    /api/products/{id}
+ *   GET    /api/inventory?afterId=n&limit=n        one page, in id order
+ *   GET    /api/carts/{session}
+ *   POST   /api/carts/{session}/items              {"productId":1,"quantity":2}
+ *   PUT    /api/carts/{session}/items/{productId}  {"quantity":3}  (0 removes)
+ *   DELETE /api/carts/{session}
+ *   POST   /api/carts/{session}/checkout           {"customerId":7}
+ *   GET    /api/customers?email=x  or  ?afterId=n&limit=n
+ *   GET    /api/customers/{id}
+ *   POST   /api/customers                          {"name":"..","email":".."}
+ *   GET    /api/sales/{id}                         sale with its lines and products
+ *   GET    /api/reports/inventory
+ *   GET    /api/reports/low-stock?threshold=n&limit=n  lowest stock first
+ *   GET    /api/reports/recent-sales?limit=n
+ *   GET    /api/reports/sales?from=date&to=date&limit=n   one page, in date order;
+ *          pass nextAfterDate and nextAfterId back as afterDate/afterId for the next
+ *
+ * Errors are returned as {"error": "..."} with a 4xx or 500 status.
+ */
+public class SalesHttpServer implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(SalesHttpServer.class.getName());
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int STOP_DELAY_SECONDS = 2;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final ProductRepository productRepository;
+    private final CustomerRepository customerRepository;
+    private final SaleRepository saleRepository;
+    private final CartStore cartStore;
+    private final StockLedger stockLedger;
+    private final LowStockIndex lowStockIndex;
+    private final CheckoutService checkoutService;
+    private final Consumer<Sale> afterCheckout;
+
+    /**
+     * Creates the server; call start() to accept requests.
+     *
+     * @param address       Address to listen on
+     * @param afterCheckout Called with each sale saved through the API,
+     *                      for example to invalidate cached products
+     * @throws IOException if the address cannot be bound
+     */
+    public SalesHttpServer(InetSocketAddress address,
+                           ProductRepository productRepository,
+                           CustomerRepository customerRepository,
+                           SaleRepository saleRepository,
+                           CartStore cartStore,
+                           StockLedger stockLedger,
+                           LowStockIndex lowStockIndex,
+                           CheckoutService checkoutService,
+                           Consumer<Sale> afterCheckout) throws IOException {
+        this.productRepository = productRepository;
+        this.customerRepository = customerRepository;
+        this.saleRepository = saleRepository;
+        this.cartStore = cartStore;
+        this.stockLedger = stockLedger;
+        this.lowStockIndex = lowStockIndex;
+        this.checkoutService = checkoutService;
+        this.afterCheckout = afterCheckout;
+
+        this.server = HttpServer.create(address, 1024);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+
+        server.createContext("/api/products", exchange -> handle(exchange, this::products));
+        server.createContext("/api/inventory", exchange -> handle(exchange, this::inventory));
+        server.createContext("/api/carts", exchange -> handle(exchange, this::carts));
+        server.createContext("/api/customers", exchange -> handle(exchange, this::customers));
+        server.createContext("/api/reports", exchange -> handle(exchange, this::reports));
+        server.createContext("/api/sales", exchange -> handle(exchange, this::sales));
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("HTTP API listening on " + server.getAddress());
+    }
+
+    /**
+     * Stops accepting requests, gives running ones a moment to finish,
+     * and shuts down the request executor.
+     */
+    @Override
+    public void close() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.close();
+    }
+
+    // ----- Routes -----
+
+    private void products(Request req, Json.Writer out) {
+        String[] path = req.path;
+        if (path.length == 2) {
+            req.requireMethod("GET");
+            String term = req.requiredParam("q").trim();
+            int limit = req.intParam("limit", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+            writeProducts(out.beginObject().name("products"),
+                    productRepository.searchByNameOrManufacturer(term, limit));
+            out.endObject();
+            return;
+        }
+        if (path.length == 3) {
+            req.requireMethod("GET");
+            int id = parseId(path[2]);
+            Product p = productRepository.findById(id)
+                    .orElseThrow(() -> new ApiException(404, "Product " + id + " not found"));
+            writeProduct(out, p);
+            return;
+        }
+        throw new ApiException(404, "Not found");
+    }
+
+    private void inventory(Request req, Json.Writer out) {
+        req.requireMethod("GET");
+        int afterId = req.intParam("afterId", 0, 0, Integer.MAX_VALUE);
+        int limit = req.intParam("limit", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+
+        List<Product> page = productRepository.findPage(afterId, limit);
+        writeProducts(out.beginObject().name("products"), page);
+        out.name("nextAfterId");
+        if (page.size() == limit) {
+            out.value(page.get(page.size() - 1).getId());
+        } else {
+            out.value((String) null);
+        }
+        out.endObject();
+    }
+
+    private void carts(Request req, Json.Writer out) throws IOException {
+        String[] path = req.path;
+        if (path.length < 3) {
+            throw new ApiException(404, "Not found");
+        }
+        String session = path[2];
+        if (session.isEmpty() || session.getBytes(StandardCharsets.UTF_8).length > CartStore.MAX_SESSION_ID_BYTES) {
+            throw new ApiException(400, "Invalid session id");
+        }
+
+        if (path.length == 3) {
+            if (req.method.equals("DELETE")) {
+                cartStore.remove(session);
+                stockLedger.releaseAll(session);
+                writeCart(out, new ShoppingCart());
+                return;
+            }
+            req.requireMethod("GET");
+            // Unknown sessions read as empty carts; only adding an item creates one
+            writeCart(out, cartStore.findCart(session).orElseGet(ShoppingCart::new));
+            return;
+        }
+
+        if (path.length == 4 && path[3].equals("items")) {
+            req.requireMethod("POST");
+            Map<String, Object> body = req.jsonBody();
+            int productId = intField(body, "productId", 1);
+            int qty = intField(body, "quantity", 1);
+
+            Product product = productRepository.findById(productId)
+                    .orElseThrow(() -> new ApiException(404, "Product " + productId + " not found"));
+            if (!stockLedger.reserve(session, productId, qty)) {
+                throw new ApiException(409, "Only " + stockLedger.getAvailable(productId) + " available");
+            }
+            if (!cartStore.addItem(session, product, qty)) {
+                // Only a new product can be refused, so nothing else was reserved for it
+                stockLedger.setReserved(session, productId, 0);
+                throw new ApiException(409, "Cart is full");
+            }
+            writeCart(out, cartStore.getCart(session));
+            return;
+        }
+
+        if (path.length == 5 && path[3].equals("items")) {
+            req.requireMethod("PUT");
+            int productId = parseId(path[4]);
+            int qty = intField(req.jsonBody(), "quantity", 0);
+            if (cartStore.findCart(session).map(cart -> cart.getItem(productId)).isEmpty()) {
+                throw new ApiException(404, "Product " + productId + " is not in the cart");
+            }
+            if (!stockLedger.setReserved(session, productId, qty)) {
+                throw new ApiException(409, "Only " + stockLedger.getAvailable(productId) + " more available");
+            }
+            if (!cartStore.updateQuantity(session, productId, qty)) {
+                // Removed or expired since the check; do not keep units reserved for it
+                stockLedger.setReserved(session, productId, 0);
+                throw new ApiException(404, "Product " + productId + " is not in the cart");
+            }
+            writeCart(out, cartStore.getCart(session));
+            return;
+        }
+
+        if (path.length == 4 && path[3].equals("checkout")) {
+            req.requireMethod("POST");
+            int customerId = intField(req.jsonBody(), "customerId", 1);
+            Customer customer = customerRepository.findById(customerId)
+                    .orElseThrow(() -> new ApiException(404, "Customer " + customerId + " not found"));
+
+            ShoppingCart cart = cartStore.findCart(session).orElseGet(ShoppingCart::new);
+            if (cart.isEmpty()) {
+                throw new ApiException(409, "Cart empty.");
+            }
+
+            CheckoutResult result = checkoutService.checkout(session, customer, cart.getItems());
+            if (!result.isSuccess()) {
+                req.status = result.getFailures().isEmpty() ? 500 : 409;
+                writeCheckoutFailure(out, result);
+                return;
+            }
+
+            Sale sale = result.getSale();
+            afterCheckout.accept(sale);
+            cartStore.remove(session);
+            req.status = 201;
+            writeSale(out, sale);
+            return;
+        }
+
+        throw new ApiException(404, "Not found");
+    }
+
+    private void customers(Request req, Json.Writer out) throws IOException {
+        String[] path = req.path;
+        if (path.length == 2 && req.method.equals("POST")) {
+            Map<String, Object> body = req.jsonBody();
+            String name = stringField(body, "name");
+            String email = stringField(body, "email");
+            Customer c = customerRepository.createOrGetByEmail(name, email);
+            if (c.getId() <= 0) {
+                throw new ApiException(500, "Customer could not be saved");
+            }
+            writeCustomer(out, c);
+            return;
+        }
+        if (path.length == 2) {
+            req.requireMethod("GET");
+            String email = req.params.get("email");
+            if (email != null) {
+                Customer c = customerRepository.findByEmail(email)
+                        .orElseThrow(() -> new ApiException(404, "Customer not found"));
+                writeCustomer(out, c);
+                return;
+            }
+            int afterId = req.intParam("afterId", 0, 0, Integer.MAX_VALUE);
+            int limit = req.intParam("limit", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+            List<Customer> page = customerRepository.findPage(afterId, limit);
+            out.beginObject().name("customers").beginArray();
+            for (Customer c : page) {
+                writeCustomer(out, c);
+            }
+            out.endArray().name("nextAfterId");
+            if (page.size() == limit) {
+                out.value(page.get(page.size() - 1).getId());
+            } else {
+                out.value((String) null);
+            }
+            out.endObject();
+            return;
+        }
+        if (path.length == 3) {
+            req.requireMethod("GET");
+            int id = parseId(path[2]);
+            Optional<Customer> c = customerRepository.findById(id);
+            writeCustomer(out, c.orElseThrow(() -> new ApiException(404, "Customer " + id + " not found")));
+            return;
+        }
+        throw new ApiException(404, "Not found");
+    }
+
+    private void sales(Request req, Json.Writer out) {
+        req.requireMethod("GET");
+        if (req.path.length != 3) {
+            throw new ApiException(404, "Not found");
+        }
+        int id = parseId(req.path[2]);
+        Sale sale = saleRepository.findById(id)
+                .orElseThrow(() -> new ApiException(404, "Sale " + id + " not found"));
+        writeSale(out, sale);
+    }
+
+    private void reports(Request req, Json.Writer out) {
+        req.requireMethod("GET");
+        String report = req.path.length == 3 ? req.path[2] : "";
+
+        switch (report) {
+            case "inventory" -> {
+                InventoryStats total = productRepository.getInventoryStats();
+                out.beginObject()
+                        .name("totalSkus").value(total.getSkuCount())
+                        .name("totalUnits").value(total.getTotalUnits())
+                        .name("stockValue").money(total.getStockValue())
+                        .name("minQuantity").value(total.getMinQuantity())
+                        .name("maxQuantity").value(total.getMaxQuantity())
+                        .name("minPrice").money(total.getMinPrice())
+                        .name("maxPrice").money(total.getMaxPrice())
+                        .name("manufacturers").beginArray();
+                for (InventoryStats m : productRepository.getInventoryStatsByManufacturer()) {
+                    out.beginObject()
+                            .name("manufacturer").value(m.getManufacturer())
+                            .name("skus").value(m.getSkuCount())
+                            .name("units").value(m.getTotalUnits())
+                            .name("stockValue").money(m.getStockValue())
+                            .endObject();
+                }
+                out.endArray().endObject();
+            }
+            case "low-stock" -> {
+                int threshold = req.intParam("threshold", 5, 0, Integer.MAX_VALUE);
+                int limit = req.intParam("limit", MAX_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+                out.beginObject().name("threshold").value(threshold).name("products");
+                writeProducts(out, lowStockIndex.findAtOrBelow(threshold, limit));
+                out.endObject();
+            }
+            case "recent-sales" -> {
+                int limit = req.intParam("limit", 10, 1, MAX_PAGE_SIZE);
+                List<SaleSummary> sales = saleRepository.findRecentSummaries(limit);
+                double grandTotal = 0.0;
+                out.beginObject().name("sales").beginArray();
+                for (SaleSummary s : sales) {
+                    writeSaleSummary(out, s);
+                    grandTotal += s.getTotal();
+                }
+                out.endArray()
+                        .name("salesCount").value(sales.size())
+                        .name("grandTotal").money(grandTotal)
+                        .endObject();
+            }
+            case "sales" -> {
+                // Dates are whole days, both inclusive; the cursor is (sale_date, id)
+                LocalDate from = req.dateParam("from");
+                LocalDate to = req.dateParam("to");
+                int limit = req.intParam("limit", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+                LocalDateTime afterDate = from.atStartOfDay();
+                int afterId = 0;
+                if (req.params.containsKey("afterDate")) {
+                    afterDate = req.dateTimeParam("afterDate");
+                    afterId = req.intParam("afterId", 0, 0, Integer.MAX_VALUE);
+                }
+
+                List<SaleSummary> page = saleRepository.findSummariesPage(
+                        afterDate, afterId, to.plusDays(1).atStartOfDay(), limit);
+                out.beginObject().name("sales").beginArray();
+                for (SaleSummary s : page) {
+                    writeSaleSummary(out, s);
+                }
+                out.endArray();
+                SaleSummary last = page.size() == limit ? page.get(page.size() - 1) : null;
+                out.name("nextAfterDate").value(last == null ? null : last.getCreatedAt().toString());
+                out.name("nextAfterId");
+                if (last != null) {
+                    out.value(last.getSaleId());
+                } else {
+                    out.value((String) null);
+                }
+                out.endObject();
+            }
+            default -> throw new ApiException(404, "Unknown report");
+        }
+    }
+
+    // ----- JSON output -----
+
+    private static void writeSaleSummary(Json.Writer out, SaleSummary s) {
+        out.beginObject()
+                .name("saleId").value(s.getSaleId())
+                .name("createdAt").value(String.valueOf(s.getCreatedAt()))
+                .name("customerName").value(s.getCustomerName())
+                .name("customerEmail").value(s.getCustomerEmail())
+                .name("total").money(s.getTotal())
+                .endObject();
+    }
+
+    private static void writeProducts(Json.Writer out, List<Product> products) {
+        out.beginArray();
+        for (Product p : products) {
+            writeProduct(out, p);
+        }
+        out.endArray();
+    }
+
+    private static void writeProduct(Json.Writer out, Product p) {
+        out.beginObject()
+                .name("id").value(p.getId())
+                .name("name").value(p.getName())
+                .name("manufacturer").value(p.getManufacturer())
+                .name("price").money(p.getPrice())
+                .name("quantityInStock").value(p.getQuantityInStock())
+                .endObject();
+    }
+
+    private static void writeCustomer(Json.Writer out, Customer c) {
+        out.beginObject()
+                .name("id").value(c.getId())
+                .name("name").value(c.getName())
+                .name("email").value(c.getEmail())
+                .endObject();
+    }
+
+    private static void writeCart(Json.Writer out, ShoppingCart cart) {
+        out.beginObject().name("items").beginArray();
+        for (CartItem item : cart.getItems()) {
+            out.beginObject()
+                    .name("productId").value(item.getProduct().getId())
+                    .name("name").value(item.getProduct().getName())
+                    .name("quantity").value(item.getQuantity())
+                    .name("lineTotal").money(item.getLineTotal())
+                    .endObject();
+        }
+        out.endArray().name("total").money(cart.getTotal()).endObject();
+    }
+
+    private static void writeSale(Json.Writer out, Sale sale) {
+        out.beginObject()
+                .name("saleId").value(sale.getId())
+                .name("customerId").value(sale.getCustomer().getId());
+        if (sale.getCreatedAt() != null) {
+            out.name("createdAt").value(sale.getCreatedAt().toString());
+        }
+        out.name("lines").beginArray();
+        for (SaleLine line : sale.getLines()) {
+            out.beginObject()
+                    .name("productId").value(line.getProduct().getId())
+                    .name("productName").value(line.getProduct().getName())
+                    .name("quantity").value(line.getQuantity())
+                    .name("unitPrice").money(line.getUnitPrice())
+                    .name("lineTotal").money(line.getLineTotal())
+                    .endObject();
+        }
+        out.endArray().name("total").money(sale.getTotal()).endObject();
+    }
+
+    private static void writeCheckoutFailure(Json.Writer out, CheckoutResult result) {
+        out.beginObject()
+                .name("error").value(result.getMessage())
+                .name("failures").beginArray();
+        for (CheckoutResult.Failure f : result.getFailures()) {
+            out.beginObject()
+                    .name("productId").value(f.getProductId())
+                    .name("productName").value(f.getProductName())
+                    .name("requested").value(f.getRequested())
+                    .name("available").value(f.getAvailable())
+                    .endObject();
+        }
+        out.endArray().endObject();
+    }
+
+    // ----- Request handling -----
+
+    private void handle(HttpExchange exchange, Route route) throws IOException {
+        int status;
+        String body;
+        try {
+            Request req = new Request(exchange);
+            Json.Writer out = new Json.Writer();
+            route.handle(req, out);
+            status = req.status;
+            body = out.toString();
+        } catch (ApiException e) {
+            status = e.status;
+            body = errorBody(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = errorBody(e.getMessage());
+        } catch (RepositoryException e) {
+            LOGGER.log(Level.SEVERE, "HTTP " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI() + " failed", e);
+            status = 503;
+            body = errorBody("Database unavailable");
+        } catch (CartStoreFullException e) {
+            status = 503;
+            body = errorBody("Too many active carts");
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "HTTP " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI() + " failed", e);
+            status = 500;
+            body = errorBody("Internal error");
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static String errorBody(String message) {
+        return new Json.Writer().beginObject().name("error").value(message).endObject().toString();
+    }
+
+    private static int parseId(String text) {
+        try {
+            int id = Integer.parseInt(text);
+            if (id > 0) {
+                return id;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new ApiException(400, "Invalid id: " + text);
+    }
+
+    private static int intField(Map<String, Object> body, String name, int min) {
+        Object value = body.get(name);
+        if (!(value instanceof Double d) || d != Math.rint(d) || d < min || d > Integer.MAX_VALUE) {
+            throw new ApiException(400, "'" + name + "' must be a whole number >= " + min);
+        }
+        return d.intValue();
+    }
+
+    private static String stringField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String s) || s.isBlank()) {
+            throw new ApiException(400, "'" + name + "' is required");
+        }
+        return s.trim();
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        void handle(Request req, Json.Writer out) throws IOException;
+    }
+
+    /**
+     * Method, path segments and query parameters of one exchange.
+     */
+    private static final class Request {
+        final HttpExchange exchange;
+        final String method;
+        // "/api/carts/abc/items" -> ["api", "carts", "abc", "items"]
+        final String[] path;
+        final Map<String, String> params;
+        int status = 200;
+
+        Request(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.method = exchange.getRequestMethod();
+
+            String rawPath = exchange.getRequestURI().getPath();
+            this.path = rawPath.replaceAll("^/+|/+$", "").split("/+");
+
+            this.params = new HashMap<>();
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    int eq = pair.indexOf('=');
+                    String key = eq < 0 ? pair : pair.substring(0, eq);
+                    String value = eq < 0 ? "" : pair.substring(eq + 1);
+                    params.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                               URLDecoder.decode(value, StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        void requireMethod(String expected) {
+            if (!method.equals(expected)) {
+                throw new ApiException(405, "Use " + expected);
+            }
+        }
+
+        String requiredParam(String name) {
+            String value = params.get(name);
+            if (value == null || value.isBlank()) {
+                throw new ApiException(400, "Query parameter '" + name + "' is required");
+            }
+            return value;
+        }
+
+        int intParam(String name, int defaultValue, int min, int max) {
+            String value = params.get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                int n = Integer.parseInt(value);
+                if (n >= min && n <= max) {
+                    return n;
+                }
+            } catch (NumberFormatException ignored) {
+                // Reported below
+            }
+            throw new ApiException(400, "Query parameter '" + name + "' must be between " + min + " and " + max);
+        }
+
+        LocalDate dateParam(String name) {
+            try {
+                return LocalDate.parse(requiredParam(name));
+            } catch (DateTimeParseException e) {
+                throw new ApiException(400, "Query parameter '" + name + "' must be a date (yyyy-mm-dd)");
+            }
+        }
+
+        LocalDateTime dateTimeParam(String name) {
+            try {
+                return LocalDateTime.parse(requiredParam(name));
+            } catch (DateTimeParseException e) {
+                throw new ApiException(400, "Query parameter '" + name + "' must be a date-time (yyyy-mm-ddThh:mm:ss)");
+            }
+        }
+
+        Map<String, Object> jsonBody() throws IOException {
+            byte[] bytes;
+            try (InputStream in = exchange.getRequestBody()) {
+                bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            }
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new ApiException(413, "Request body too large");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * A request that cannot be served, with the status to report.
+     */
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
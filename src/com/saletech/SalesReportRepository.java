@@ -0,0 +1,44 @@
+package com.saletech;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * SalesReportRepository
+ *
+ * Revenue and units sold per day, product and customer, read from rollup
+ * tables that are updated in the same transaction as each sale. Every
+ * query reads only the rows it returns, however many sales are stored.
+ * Reads throw RepositoryException when the store cannot be read, so an
+ * outage is never reported as "no sales".
+ */
+public interface SalesReportRepository {
+
+    /**
+     * @return One row per day with sales between from and to (inclusive), oldest first
+     */
+    List<SalesRollup> findDailySales(LocalDate from, LocalDate to);
+
+    /**
+     * @return The products with the highest revenue, best first
+     */
+    List<SalesRollup> findTopProducts(int limit);
+
+    /**
+     * @return The customers with the highest revenue, best first
+     */
+    List<SalesRollup> findTopCustomers(int limit);
+
+    Optional<SalesRollup> findProductSales(int productId);
+
+    Optional<SalesRollup> findCustomerSales(int customerId);
+
+    /**
+     * Recomputes every rollup from sales and sale_lines, for example after
+     * the tables are first created or sales were changed by hand.
+     *
+     * @return false if the rebuild failed and the old rollups were kept
+     */
+    boolean rebuild();
+}
@@ -0,0 +1,58 @@
+package com.saletech;
+
+import java.time.LocalDate;
+
+/**
+ * SalesRollup
+ *
+ * Running totals for one day, product or customer, read from the rollup
+ * tables that DbSaleRepository maintains as sales are saved.
+ * Daily rows have a day and no id; product and customer rows have an id
+ * and the current name, or null if the row has been deleted.
+ */
+public class SalesRollup {
+
+    private final LocalDate day;
+    private final int id;
+    private final String name;
+    private final long saleCount;
+    private final long units;
+    private final double revenue;
+
+    public SalesRollup(LocalDate day, long saleCount, long units, double revenue) {
+        this(day, 0, null, saleCount, units, revenue);
+    }
+
+    public SalesRollup(int id, String name, long saleCount, long units, double revenue) {
+        this(null, id, name, saleCount, units, revenue);
+    }
+
+    private SalesRollup(LocalDate day, int id, String name, long saleCount, long units, double revenue) {
+        this.day = day;
+        this.id = id;
+        this.name = name;
+        this.saleCount = saleCount;
+        this.units = units;
+        this.revenue = revenue;
+    }
+
+    public LocalDate getDay() { return day; }
+
+    public int getId() { return id; }
+
+    public String getName() { return name; }
+
+    // Sales that contributed, each counted once however many lines it had
+    public long getSaleCount() { return saleCount; }
+
+    public long getUnits() { return units; }
+
+    public double getRevenue() { return revenue; }
+
+    @Override
+    public String toString() {
+        String key = (day != null) ? day.toString() : "id=" + id + ", name=" + name;
+        return "Rollup[" + key + ", sales=" + saleCount + ", units=" + units +
+                ", revenue=" + String.format("%.2f", revenue) + "]";
+    }
+}
@@ -1,6 +1,7 @@
 package com.saletech;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -10,12 +11,26 @@ import java.util.List;
  * The cart only exists during the user's current session and is cleared
  * after checkout. Each entry in the cart is stored as a CartItem, which
  * tracks both the product and the quantity being purchased.
+ *
+ * Items are indexed by product id, and the cart total is kept as a running
+ * sum of whole cents that every change adjusts. Adding, updating and
+ * reading the total are O(1) and do not allocate for existing items, even
+ * for B2B orders with thousands of lines.
  */
 public class ShoppingCart {
 
-    // List holding all items currently in the shopping cart
+    // Items in the order they were first added, for display and checkout
     private final List<CartItem> items = new ArrayList<>();
 
+    // Read-only view handed to callers; created once
+    private final List<CartItem> itemsView = Collections.unmodifiableList(items);
+
+    // Product id -> cart item
+    private final IntObjectHashMap<CartItem> itemsByProductId = new IntObjectHashMap<>();
+
+    // Sum of every item's line total, in cents
+    private long totalCents;
+
     /**
      * Adds a product to the shopping cart. If the product is already
      * present in the cart, its quantity is increased instead of creating
@@ -25,35 +40,95 @@ public class ShoppingCart {
      * @param qty Quantity of the product to add
      */
     public void addItem(Product p, int qty) {
-        // Check if item already exists in the cart
-        for (CartItem item : items) {
-            if (item.getProduct().getId() == p.getId()) {
-                // Increase quantity instead of adding a second entry
-                item.increment(qty);
-                return;
-            }
+        CartItem existing = itemsByProductId.get(p.getId());
+        if (existing != null) {
+            // Increase quantity instead of adding a second entry
+            totalCents += existing.increment(qty);
+            return;
         }
+
         // Otherwise add as a new CartItem
-        items.add(new CartItem(p, qty));
+        CartItem item = new CartItem(p, qty);
+        items.add(item);
+        itemsByProductId.put(p.getId(), item);
+        totalCents += item.getLineTotalCents();
+    }
+
+    /**
+     * Sets the quantity of a product already in the cart.
+     * A quantity of 0 or less removes the product.
+     *
+     * @param productId Product to change
+     * @param qty       New quantity
+     * @return false if the product is not in the cart
+     */
+    public boolean updateQuantity(int productId, int qty) {
+        CartItem item = itemsByProductId.get(productId);
+        if (item == null) {
+            return false;
+        }
+        if (qty <= 0) {
+            return removeItem(productId);
+        }
+        totalCents += item.setQuantity(qty);
+        return true;
+    }
+
+    /**
+     * Removes a product from the cart. This is O(n) in the number of lines
+     * because display order is preserved.
+     *
+     * @param productId Product to remove
+     * @return false if the product is not in the cart
+     */
+    public boolean removeItem(int productId) {
+        CartItem item = itemsByProductId.remove(productId);
+        if (item == null) {
+            return false;
+        }
+        items.remove(item);
+        totalCents -= item.getLineTotalCents();
+        return true;
     }
 
     /**
      * Returns all cart items. Used during checkout and cart display.
      *
-     * @return List of CartItem objects
+     * @return Read-only list of CartItem objects
+     */
+    public List<CartItem> getItems() { return itemsView; }
+
+    /**
+     * @return The cart item for the product, or null if it is not in the cart
+     */
+    public CartItem getItem(int productId) {
+        return itemsByProductId.get(productId);
+    }
+
+    /**
+     * @return true if the cart has no items
+     */
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Returns the running total of the cart in whole cents.
+     *
+     * @return Combined total of every line, in cents
      */
-    public List<CartItem> getItems() { return items; }
+    public long getTotalCents() {
+        return totalCents;
+    }
 
     /**
-     * Calculates the total cost of the cart by summing each
-     * CartItem's line total (price * quantity).
+     * Returns the total cost of the cart (the sum of each CartItem's
+     * line total).
      *
      * @return Combined dollar total of the shopping cart
      */
     public double getTotal() {
-        return items.stream()
-                .mapToDouble(CartItem::getLineTotal)
-                .sum();
+        return totalCents / 100.0;
     }
 
     /**
@@ -79,5 +154,7 @@ public class ShoppingCart {
      */
     public void clear() {
         items.clear();
+        itemsByProductId.clear();
+        totalCents = 0;
     }
 }
@@ -1,10 +1,23 @@
 package com.saletech;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.function.IntFunction;
 import java.util.logging.*;
+import java.util.stream.Stream;
 
 
 
@@ -19,25 +32,37 @@ public class SmartSalesApp {
     private static final Logger LOGGER =
             Logger.getLogger(SmartSalesApp.class.getName());
 
+    // Handlers sit on the package logger so every class's records reach them;
+    // the field keeps the logger (and its configuration) from being collected
+    private static final Logger PACKAGE_LOGGER = Logger.getLogger("com.saletech");
+
+    // Records waiting for the log file writer before the overflow policy applies
+    private static final int LOG_BUFFER_CAPACITY = 8192;
+
     static {
         try {
             LogManager.getLogManager().reset();
 
-            LOGGER.setLevel(Level.ALL);
+            PACKAGE_LOGGER.setLevel(Level.FINE);
 
+            // Synchronous so messages stay in order with the console prompts
             ConsoleHandler consoleHandler = new ConsoleHandler();
             consoleHandler.setLevel(Level.INFO);
             consoleHandler.setFormatter(new SimpleFormatter());
-            LOGGER.addHandler(consoleHandler);
+            PACKAGE_LOGGER.addHandler(consoleHandler);
 
+            // Disk writes happen on a background thread; -Dsaletech.log.overflow=BLOCK
+            // trades that for never losing a record when the buffer fills up
             FileHandler fileHandler = new FileHandler("smartsalesapp.log", true);
             fileHandler.setLevel(Level.FINE);
             fileHandler.setFormatter(new SimpleFormatter());
-            LOGGER.addHandler(fileHandler);
+            AsyncLogHandler.OverflowPolicy overflow = AsyncLogHandler.OverflowPolicy.valueOf(
+                    System.getProperty("saletech.log.overflow", "DROP").trim().toUpperCase(Locale.ROOT));
+            PACKAGE_LOGGER.addHandler(AsyncLogHandler.start(fileHandler, LOG_BUFFER_CAPACITY, overflow));
 
             LOGGER.config("SmartSalesApp logger configured successfully.");
 
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             System.err.println("Failed to set up logging for SmartSalesApp.");
             e.printStackTrace();
         }
@@ -45,15 +70,75 @@ public class SmartSalesApp {
 
     private static final Scanner SCANNER = new Scanner(System.in);
 
-    private static final ProductRepository productRepository = new DbProductRepository();
-    private static final CustomerRepository customerRepository = new DbCustomerRepository();
-    private static final SaleRepository saleRepository = new DbSaleRepository();
-
-    private static final ShoppingCart cart = new ShoppingCart();
+    // Update these three values to match your database
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/saletech";
+    private static final String DB_USER = "root";
+    private static final String DB_PASSWORD = "";
+    private static final int DB_POOL_SIZE = 10;
+
+    private static final PooledDataSource dataSource = openDataSource(DB_POOL_SIZE);
+
+    // Latency, rows and errors of every repository call; visible over JMX
+    // and logged to the log file every minute
+    private static final RepositoryMetrics productMetrics = new RepositoryMetrics("ProductRepository");
+    private static final RepositoryMetrics customerMetrics = new RepositoryMetrics("CustomerRepository");
+    private static final RepositoryMetrics saleMetrics = new RepositoryMetrics("SaleRepository");
+    private static final MetricsReporter metricsReporter = openMetricsReporter();
+
+    // Product reads are served from memory; entries expire after 30 seconds
+    private static final DbProductRepository dbProductRepository = new DbProductRepository(dataSource);
+    private static final CachingProductRepository productCache =
+            new CachingProductRepository(dbProductRepository, 10_000, Duration.ofSeconds(30));
+    // Searches are answered from an in-memory trigram index over the cached
+    // repository, rebuilt every 10 minutes to pick up other processes' changes
+    private static final IndexedSearchProductRepository productSearch = openProductSearch();
+    private static final ProductRepository productRepository =
+            new InstrumentedProductRepository(productSearch, productMetrics);
+
+    private static final int SEARCH_RESULT_LIMIT = 100;
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final int MAX_REJECTIONS_SHOWN = 20;
+    private static final int DEFAULT_HTTP_PORT = 8080;
+    // Sale and customer ids are reserved in blocks so rows can be batched.
+    // Blocks are reserved on a connection of their own, because ids are
+    // requested by callers already holding one of the pool's connections.
+    private static final PooledDataSource idBlockDataSource = openDataSource(1);
+    private static final IdAllocator customerIds = new IdAllocator(idBlockDataSource, "customers", 50);
+    private static final IdAllocator saleIds = new IdAllocator(idBlockDataSource, "sales", 100);
+
+    private static final CustomerRepository customerRepository =
+            new InstrumentedCustomerRepository(new DbCustomerRepository(dataSource, customerIds), customerMetrics);
+    private static final DbSaleRepository dbSaleRepository = new DbSaleRepository(dataSource, saleIds);
+    private static final SaleRepository saleRepository =
+            new InstrumentedSaleRepository(dbSaleRepository, saleMetrics);
+    // Per-day, per-product and per-customer totals kept up to date by dbSaleRepository
+    private static final SalesReportRepository salesReportRepository = new DbSalesReportRepository(dataSource);
+    // Stock is reserved when added to a cart; idle reservations lapse after
+    // 15 minutes and counters are re-read from the database every minute
+    private static final StockLedger stockLedger = openStockLedger();
+    private static final CheckoutService checkoutService =
+            new CheckoutService(dataSource, dbProductRepository, dbSaleRepository, stockLedger);
+    // Products ordered by stock, kept current by every stock change and
+    // re-read every 5 minutes; SKUs dropping to 5 units or fewer are logged
+    private static final int LOW_STOCK_ALERT_THRESHOLD = 5;
+    private static final LowStockIndex lowStockIndex = openLowStockIndex();
+
+    // Carts are kept per session in carts.dat so they survive a restart;
+    // the console is a single shopper
+    private static final String CART_SESSION = "console";
+    private static final CartStore cartStore = openCartStore();
 
     public static void main(String[] args) {
         if (!testDatabase()) {
             System.out.println("Database connection failed. Please verify your DB settings.");
+            shutdown();
+            return;
+        }
+
+        // "--http [port]" serves the JSON API instead of the console menu
+        if (args.length > 0 && args[0].equals("--http")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_HTTP_PORT;
+            startHttpServer(port);
             return;
         }
 
@@ -62,28 +147,132 @@ public class SmartSalesApp {
             printMainMenu();
             int choice = readInt("Choose an option: ");
 
-            switch (choice) {
-                case 1 -> handleSearchProducts();
-                case 2 -> handleDisplayInventory();
-                case 3 -> handleAddToCart();
-                case 4 -> handleViewCart();
-                case 5 -> handleCheckout();
-                case 6 -> handleCustomerMenu();
-                case 7 -> handleReportsMenu();
-                case 0 -> {
-                    System.out.println("Exiting Smart Sales Application. Goodbye.");
-                    running = false;
+            try {
+                switch (choice) {
+                    case 1 -> handleSearchProducts();
+                    case 2 -> handleDisplayInventory();
+                    case 3 -> handleAddToCart();
+                    case 4 -> handleViewCart();
+                    case 5 -> handleCheckout();
+                    case 6 -> handleCustomerMenu();
+                    case 7 -> handleReportsMenu();
+                    case 8 -> handleImportCatalog();
+                    case 0 -> {
+                        System.out.println("Exiting Smart Sales Application. Goodbye.");
+                        running = false;
+                    }
+                    default -> System.out.println("Invalid option.");
                 }
-                default -> System.out.println("Invalid option.");
+            } catch (RepositoryException ex) {
+                LOGGER.log(Level.SEVERE, "Database error.", ex);
+                System.out.println("Database error. Please try again.");
             }
             System.out.println();
         }
+
+        LOGGER.info("Product cache at shutdown: " + productCache);
+        LOGGER.info("Connection pool at shutdown: " + dataSource);
+        shutdown();
+    }
+
+    private static void startHttpServer(int port) {
+        SalesHttpServer server;
+        try {
+            server = new SalesHttpServer(new InetSocketAddress(port), productRepository,
+                    customerRepository, saleRepository, cartStore, stockLedger, lowStockIndex, checkoutService,
+                    SmartSalesApp::invalidateSoldProducts);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to start the HTTP API on port " + port, e);
+            shutdown();
+            return;
+        }
+
+        // The server's own threads keep the JVM running until it is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            LOGGER.info("Connection pool at shutdown: " + dataSource);
+            shutdown();
+        }, "http-shutdown"));
+        server.start();
+        System.out.println("Serving the JSON API on port " + port + ". Press Ctrl+C to stop.");
+    }
+
+    /**
+     * Stock was decremented in SQL during checkout, so drop the stale cached copies.
+     */
+    private static void invalidateSoldProducts(Sale sale) {
+        for (SaleLine line : sale.getLines()) {
+            productCache.invalidate(line.getProduct().getId());
+        }
+    }
+
+    private static PooledDataSource openDataSource(int maxSize) {
+        PooledDataSource pool = new PooledDataSource(DB_URL, DB_USER, DB_PASSWORD, maxSize);
+        pool.start();
+        return pool;
+    }
+
+    private static MetricsReporter openMetricsReporter() {
+        MetricsReporter reporter =
+                new MetricsReporter(Duration.ofMinutes(1), productMetrics, customerMetrics, saleMetrics);
+        reporter.start();
+        return reporter;
+    }
+
+    private static IndexedSearchProductRepository openProductSearch() {
+        IndexedSearchProductRepository search =
+                new IndexedSearchProductRepository(productCache, Duration.ofMinutes(10));
+        search.start();
+        return search;
+    }
+
+    private static StockLedger openStockLedger() {
+        StockLedger ledger = new StockLedger(dbProductRepository, Duration.ofMinutes(15), Duration.ofMinutes(1));
+        ledger.start();
+        return ledger;
+    }
+
+    private static LowStockIndex openLowStockIndex() {
+        LowStockIndex index = new LowStockIndex(dbProductRepository, LOW_STOCK_ALERT_THRESHOLD, Duration.ofMinutes(5));
+        index.addListener((product, threshold) -> LOGGER.warning(() -> "Low stock: " + product.getName()
+                + " (id " + product.getId() + ") has " + product.getQuantityInStock() + " left"));
+        dbProductRepository.addStockListener(index);
+        index.start();
+        return index;
+    }
+
+    private static CartStore openCartStore() {
+        try {
+            // Room for 32768 shoppers active within a day; slots are about
+            // 8 KB, so the file can reach 256 MB (pages are only written when used)
+            CartStore store = new CartStore(Path.of("carts.dat"), productRepository,
+                    32_768, 1000, 1024, Duration.ofDays(1));
+            store.start();
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open the cart store.", e);
+        }
+    }
+
+    private static void shutdown() {
+        metricsReporter.close();
+        stockLedger.close();
+        lowStockIndex.close();
+        productSearch.close();
+        try {
+            cartStore.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to flush the cart store.", e);
+        }
+        idBlockDataSource.close();
+        dataSource.close();
     }
 
     private static boolean testDatabase() {
         try {
-            int count = productRepository.findAll().size();
-            LOGGER.info("Database connected. Products loaded: " + count);
+            // One-row query; findPage throws if the database cannot be read
+            productRepository.findPage(0, 1);
+            LOGGER.info("Database connected.");
             return true;
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "Database test failed.", ex);
@@ -102,6 +291,7 @@ public class SmartSalesApp {
         System.out.println("5. Checkout");
         System.out.println("6. Customer management");
         System.out.println("7. Reports");
+        System.out.println("8. Import catalog (CSV)");
         System.out.println("0. Exit");
     }
 
@@ -115,11 +305,14 @@ public class SmartSalesApp {
         }
 
         try {
-            List<Product> results = productRepository.searchByNameOrManufacturer(term);
+            List<Product> results = productRepository.searchByNameOrManufacturer(term, SEARCH_RESULT_LIMIT);
             if (results.isEmpty()) {
                 System.out.println("No products found.");
             } else {
                 results.forEach(System.out::println);
+                if (results.size() == SEARCH_RESULT_LIMIT) {
+                    System.out.println("Showing the first " + SEARCH_RESULT_LIMIT + " matches. Refine your search to see more.");
+                }
             }
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "Search failed for term: " + term, ex);
@@ -129,7 +322,7 @@ public class SmartSalesApp {
 
     private static void handleDisplayInventory() {
         try {
-            productRepository.findAll().forEach(System.out::println);
+            productRepository.streamAll().forEach(System.out::println);
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "Failed to display inventory.", ex);
             System.out.println("Unable to load inventory right now.");
@@ -162,24 +355,31 @@ public class SmartSalesApp {
             return;
         }
 
-        if (qty > product.getQuantityInStock()) {
+        if (!stockLedger.reserve(CART_SESSION, product.getId(), qty)) {
             System.out.println("Invalid quantity.");
-            System.out.println("Available: " + product.getQuantityInStock());
+            System.out.println("Available: " + stockLedger.getAvailable(product.getId()));
             return;
         }
 
-        cart.addItem(product, qty);
+        if (!cartStore.addItem(CART_SESSION, product, qty)) {
+            // Only a new product can be refused, so nothing else was reserved for it
+            stockLedger.setReserved(CART_SESSION, product.getId(), 0);
+            System.out.println("Cart is full.");
+            return;
+        }
         System.out.println("Item added.");
-        LOGGER.info("Added to cart: " + qty + " x " + product.getName() + " (id " + product.getId() + ")");
+        LOGGER.info(() -> "Added to cart: " + qty + " x " + product.getName() + " (id " + product.getId() + ")");
     }
 
     private static void handleViewCart() {
+        ShoppingCart cart = cartStore.getCart(CART_SESSION);
         cart.printCart();
         System.out.printf("Total: $%.2f%n", cart.getTotal());
     }
 
     private static void handleCheckout() {
-        if (cart.getItems().isEmpty()) {
+        ShoppingCart cart = cartStore.getCart(CART_SESSION);
+        if (cart.isEmpty()) {
             System.out.println("Cart empty.");
             return;
         }
@@ -190,63 +390,62 @@ public class SmartSalesApp {
             return;
         }
 
-        Sale sale = new Sale(customer);
-
-        // Validate and apply inventory updates
-        for (CartItem item : cart.getItems()) {
-            int productId = item.getProduct().getId();
-            int qtyRequested = item.getQuantity();
-
-            Optional<Product> fresh = productRepository.findById(productId);
-            if (fresh.isEmpty()) {
-                System.out.println("Checkout failed. Product missing: " + productId);
-                return;
+        // Validate stock, decrement inventory and save the sale in one transaction
+        CheckoutResult result = checkoutService.checkout(CART_SESSION, customer, cart.getItems());
+        if (!result.isSuccess()) {
+            System.out.println("Checkout failed. " + result.getMessage());
+            for (CheckoutResult.Failure failure : result.getFailures()) {
+                System.out.println("  " + failure);
             }
+            return;
+        }
 
-            Product p = fresh.get();
-            int available = p.getQuantityInStock();
+        Sale saved = result.getSale();
 
-            if (qtyRequested > available) {
-                System.out.println("Checkout failed. Not enough stock for: " + p.getName());
-                System.out.println("Requested: " + qtyRequested + " Available: " + available);
-                return;
-            }
-        }
+        invalidateSoldProducts(saved);
 
-        // Add lines and update inventory
-        for (CartItem item : cart.getItems()) {
-            int productId = item.getProduct().getId();
-            int qty = item.getQuantity();
+        cartStore.remove(CART_SESSION);
 
-            Optional<Product> fresh = productRepository.findById(productId);
-            if (fresh.isEmpty()) {
-                System.out.println("Checkout failed. Product missing: " + productId);
-                return;
-            }
+        System.out.println("Checkout complete.");
+        System.out.println("Sale id: " + saved.getId());
+        System.out.printf("Sale Total: %.2f%n", saved.getTotal());
 
-            Product p = fresh.get();
+        LOGGER.info(() -> "Checkout completed for sale id " + saved.getId() + " total " + saved.getTotal());
+    }
 
-            sale.addLine(p, qty, p.getPrice());
+    private static void handleImportCatalog() {
+        System.out.print("CSV file (id,name,manufacturer,price,quantity_in_stock): ");
+        String path = SCANNER.nextLine().trim();
 
-            productRepository.updateQuantity(productId, p.getQuantityInStock() - qty);
+        if (path.isEmpty()) {
+            System.out.println("A file path is required.");
+            return;
         }
 
-        // Persist the sale to DB
-        Sale saved = saleRepository.save(sale);
+        try {
+            CatalogImporter importer = new CatalogImporter(productRepository, IMPORT_CHUNK_SIZE);
+            ImportResult result = importer.importCsv(Path.of(path));
 
-        cart.clear();
+            System.out.println("Rows read: " + result.getRowsRead());
+            System.out.println("Imported: " + result.getRowsImported());
+            System.out.println("Rejected: " + result.getRowsRejected());
+            System.out.printf("Throughput: %.0f rows/sec%n", result.getRowsPerSecond());
 
-        System.out.println("Checkout complete.");
-        System.out.println("Sale id: " + saved.getId());
-        System.out.printf("Sale Total: %.2f%n", saved.getTotal());
+            result.getRejections().stream()
+                    .limit(MAX_REJECTIONS_SHOWN)
+                    .forEach(r -> System.out.println("  " + r));
 
-        LOGGER.info("Checkout completed for sale id " + saved.getId() + " total " + saved.getTotal());
+        } catch (IOException | InvalidPathException ex) {
+            LOGGER.log(Level.SEVERE, "Catalog import failed for " + path, ex);
+            System.out.println("Unable to read file: " + path);
+        }
     }
 
     private static void handleCustomerMenu() {
         System.out.println("1. Create customer");
         System.out.println("2. Find by email");
         System.out.println("3. List all");
+        System.out.println("4. Import customers (CSV)");
         System.out.println("0. Back");
 
         int choice = readInt("Choose: ");
@@ -255,6 +454,7 @@ public class SmartSalesApp {
             case 1 -> createCustomerDb();
             case 2 -> findCustomerByEmailDb();
             case 3 -> listCustomersDb();
+            case 4 -> importCustomersDb();
             case 0 -> { }
             default -> System.out.println("Invalid option.");
         }
@@ -298,12 +498,59 @@ public class SmartSalesApp {
     }
 
     private static void listCustomersDb() {
-        List<Customer> customers = customerRepository.findAll();
-        if (customers.isEmpty()) {
+        int count = 0;
+        Iterator<Customer> customers = customerRepository.streamAll().iterator();
+        while (customers.hasNext()) {
+            System.out.println(customers.next());
+            count++;
+        }
+
+        if (count == 0) {
             System.out.println("No customers found.");
+        }
+    }
+
+    private static void importCustomersDb() {
+        System.out.print("CSV file (name,email): ");
+        String path = SCANNER.nextLine().trim();
+
+        if (path.isEmpty()) {
+            System.out.println("A file path is required.");
             return;
         }
-        customers.forEach(System.out::println);
+
+        CustomerImporter importer = new CustomerImporter(customerRepository, IMPORT_CHUNK_SIZE);
+
+        try (Stream<String> lines = Files.lines(Path.of(path))) {
+            CustomerImportResult result = importer.importAll(lines
+                    .filter(line -> !line.isBlank() && !line.equalsIgnoreCase("name,email"))
+                    .map(SmartSalesApp::parseCustomerLine));
+
+            System.out.println("Records read: " + result.getRowsRead());
+            System.out.println("Resolved: " + result.getRowsImported());
+            System.out.println("Rejected: " + result.getRowsRejected());
+            System.out.printf("Throughput: %.0f records/sec%n", result.getRowsPerSecond());
+
+            result.getRejections().stream()
+                    .limit(MAX_REJECTIONS_SHOWN)
+                    .forEach(r -> System.out.println("  " + r));
+
+        } catch (IOException | UncheckedIOException | InvalidPathException ex) {
+            LOGGER.log(Level.SEVERE, "Customer import failed for " + path, ex);
+            System.out.println("Unable to read file: " + path);
+        }
+    }
+
+    /**
+     * Splits "name,email" at the last comma, since names may contain commas
+     * but emails cannot.
+     */
+    private static Customer parseCustomerLine(String line) {
+        int comma = line.lastIndexOf(',');
+        if (comma < 0) {
+            return new Customer(line.trim(), "");
+        }
+        return new Customer(line.substring(0, comma).trim(), line.substring(comma + 1).trim());
     }
 
     private static Customer selectOrCreateCustomerDb() {
@@ -315,12 +562,17 @@ public class SmartSalesApp {
 
         return switch (choice) {
             case 1 -> {
-                List<Customer> customers = customerRepository.findAll();
-                if (customers.isEmpty()) {
+                int count = 0;
+                Iterator<Customer> customers = customerRepository.streamAll().iterator();
+                while (customers.hasNext()) {
+                    System.out.println(customers.next());
+                    count++;
+                }
+
+                if (count == 0) {
                     System.out.println("No customers available. Create one first.");
                     yield null;
                 }
-                customers.forEach(System.out::println);
                 int id = readInt("Customer id: ");
                 yield customerRepository.findById(id).orElse(null);
             }
@@ -348,6 +600,12 @@ public class SmartSalesApp {
         System.out.println("1. Inventory Report (Database)");
         System.out.println("2. Low Stock Report (Database)");
         System.out.println("3. Recent Sales Report (Database)");
+        System.out.println("4. Daily Sales Report");
+        System.out.println("5. Top Products by Revenue");
+        System.out.println("6. Top Customers by Revenue");
+        System.out.println("7. Rebuild Sales Totals");
+        System.out.println("8. Export Sales History (CSV)");
+        System.out.println("9. Sale Receipt");
         System.out.println("0. Back");
 
         int choice = readInt("Choose: ");
@@ -356,6 +614,12 @@ public class SmartSalesApp {
             case 1 -> printInventoryReportDb();
             case 2 -> printLowStockReportDb();
             case 3 -> printRecentSalesReportDb();
+            case 4 -> printDailySalesReport();
+            case 5 -> printTopSalesReport("PRODUCTS", salesReportRepository::findTopProducts);
+            case 6 -> printTopSalesReport("CUSTOMERS", salesReportRepository::findTopCustomers);
+            case 7 -> handleRebuildSalesTotals();
+            case 8 -> handleExportSales();
+            case 9 -> printSaleReceipt();
             case 0 -> { }
             default -> System.out.println("Invalid option.");
         }
@@ -365,20 +629,25 @@ public class SmartSalesApp {
         System.out.println("INVENTORY REPORT (DATABASE)");
         System.out.println("--------------------------------------");
 
-        List<Product> products = productRepository.findAll();
-        if (products.isEmpty()) {
+        // Totals are computed by the database; only one row per manufacturer comes back
+        InventoryStats total = productRepository.getInventoryStats();
+        if (total.getSkuCount() == 0) {
             System.out.println("No products found in inventory.");
             return;
         }
 
-        int totalSkus = products.size();
-        int totalUnits = products.stream().mapToInt(Product::getQuantityInStock).sum();
-
-        products.forEach(System.out::println);
+        for (InventoryStats m : productRepository.getInventoryStatsByManufacturer()) {
+            System.out.printf("%-24s SKUs=%-6d units=%-8d value=%.2f%n",
+                    m.getManufacturer() == null ? "(none)" : m.getManufacturer(),
+                    m.getSkuCount(), m.getTotalUnits(), m.getStockValue());
+        }
 
         System.out.println("--------------------------------------");
-        System.out.println("Total SKUs: " + totalSkus);
-        System.out.println("Total Units in Stock: " + totalUnits);
+        System.out.println("Total SKUs: " + total.getSkuCount());
+        System.out.println("Total Units in Stock: " + total.getTotalUnits());
+        System.out.println("Stock Value: " + String.format("%.2f", total.getStockValue()));
+        System.out.println("Units per SKU: " + total.getMinQuantity() + " to " + total.getMaxQuantity());
+        System.out.println("Price Range: " + String.format("%.2f to %.2f", total.getMinPrice(), total.getMaxPrice()));
     }
 
     private static void printLowStockReportDb() {
@@ -392,17 +661,12 @@ public class SmartSalesApp {
         System.out.println("Threshold: " + threshold);
         System.out.println("--------------------------------------");
 
-        List<Product> products = productRepository.findAll();
-        boolean any = false;
-
-        for (Product p : products) {
-            if (p.getQuantityInStock() <= threshold) {
-                System.out.println(p);
-                any = true;
-            }
+        List<Product> lowStock = lowStockIndex.findAtOrBelow(threshold);
+        for (Product p : lowStock) {
+            System.out.println(p);
         }
 
-        if (!any) {
+        if (lowStock.isEmpty()) {
             System.out.println("No low stock items found.");
         }
     }
@@ -434,6 +698,171 @@ public class SmartSalesApp {
         System.out.println("Grand Total: " + String.format("%.2f", grandTotal));
     }
 
+    private static void printDailySalesReport() {
+        int days = readInt("Number of days: ");
+        if (days <= 0) {
+            System.out.println("Enter a number greater than 0.");
+            return;
+        }
+
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusDays(days - 1L);
+
+        System.out.println("DAILY SALES REPORT");
+        System.out.println(from + " to " + to);
+        System.out.println("--------------------------------------");
+
+        List<SalesRollup> rows = salesReportRepository.findDailySales(from, to);
+        if (rows.isEmpty()) {
+            System.out.println("No sales found.");
+            return;
+        }
+
+        long salesCount = 0;
+        long units = 0;
+        double revenue = 0.0;
+        for (SalesRollup r : rows) {
+            System.out.printf("%s  sales=%-6d units=%-8d revenue=%.2f%n",
+                    r.getDay(), r.getSaleCount(), r.getUnits(), r.getRevenue());
+            salesCount += r.getSaleCount();
+            units += r.getUnits();
+            revenue += r.getRevenue();
+        }
+
+        System.out.println("--------------------------------------");
+        System.out.println("Sales Count: " + salesCount);
+        System.out.println("Units Sold: " + units);
+        System.out.println("Revenue: " + String.format("%.2f", revenue));
+    }
+
+    private static void printTopSalesReport(String title, IntFunction<List<SalesRollup>> query) {
+        int limit = readInt("How many: ");
+        if (limit <= 0) {
+            System.out.println("Enter a number greater than 0.");
+            return;
+        }
+
+        System.out.println("TOP " + title + " BY REVENUE");
+        System.out.println("--------------------------------------");
+
+        List<SalesRollup> rows = query.apply(limit);
+        if (rows.isEmpty()) {
+            System.out.println("No sales found.");
+            return;
+        }
+
+        int rank = 1;
+        for (SalesRollup r : rows) {
+            System.out.printf("%3d. %-30s (id %d)  sales=%-6d units=%-8d revenue=%.2f%n",
+                    rank++, r.getName(), r.getId(), r.getSaleCount(), r.getUnits(), r.getRevenue());
+        }
+    }
+
+    private static void handleRebuildSalesTotals() {
+        System.out.println("Recomputing sales totals from all stored sales...");
+        if (salesReportRepository.rebuild()) {
+            System.out.println("Sales totals rebuilt.");
+        } else {
+            System.out.println("Rebuild failed; the previous totals were kept. See the log for details.");
+        }
+    }
+
+    private static void printSaleReceipt() {
+        int id = readInt("Sale id: ");
+        Optional<Sale> found = saleRepository.findById(id);
+        if (found.isEmpty()) {
+            System.out.println("Sale not found.");
+            return;
+        }
+
+        Sale sale = found.get();
+        System.out.println("RECEIPT");
+        System.out.println("--------------------------------------");
+        System.out.println("Sale id: " + sale.getId());
+        System.out.println("Date: " + sale.getCreatedAt());
+        System.out.println("Customer: " + sale.getCustomer().getName() + " <" + sale.getCustomer().getEmail() + ">");
+        System.out.println("--------------------------------------");
+        for (SaleLine line : sale.getLines()) {
+            System.out.printf("%-30s %4d x %8.2f = %10.2f%n",
+                    line.getProduct().getName(), line.getQuantity(), line.getUnitPrice(), line.getLineTotal());
+        }
+        System.out.println("--------------------------------------");
+        System.out.printf("Sale Total: %.2f%n", sale.getTotal());
+    }
+
+    private static void handleExportSales() {
+        LocalDate from = readDate("From date (yyyy-mm-dd): ");
+        LocalDate to = readDate("To date, inclusive (yyyy-mm-dd): ");
+        if (to.isBefore(from)) {
+            System.out.println("The end date must not be before the start date.");
+            return;
+        }
+
+        System.out.print("Output CSV file: ");
+        String path = SCANNER.nextLine().trim();
+        if (path.isEmpty()) {
+            System.out.println("A file path is required.");
+            return;
+        }
+
+        // Rows are written as pages arrive, so a year of sales never sits in memory
+        long rows = 0;
+        double grandTotal = 0.0;
+        try (BufferedWriter out = Files.newBufferedWriter(Path.of(path));
+             Stream<SaleSummary> sales = saleRepository.streamSummaries(
+                     from.atStartOfDay(), to.plusDays(1).atStartOfDay())) {
+
+            out.write("sale_id,sale_date,customer_name,customer_email,total");
+            out.newLine();
+
+            Iterator<SaleSummary> it = sales.iterator();
+            while (it.hasNext()) {
+                SaleSummary s = it.next();
+                out.write(s.getSaleId() + "," + s.getCreatedAt() + "," + csvField(s.getCustomerName()) + ","
+                        + csvField(s.getCustomerEmail()) + "," + String.format(Locale.ROOT, "%.2f", s.getTotal()));
+                out.newLine();
+                rows++;
+                grandTotal += s.getTotal();
+            }
+
+        } catch (IOException | InvalidPathException ex) {
+            LOGGER.log(Level.SEVERE, "Sales export failed for " + path, ex);
+            System.out.println("Unable to write file: " + path);
+            return;
+        }
+
+        System.out.println("Exported " + rows + " sales to " + path);
+        System.out.println("Grand Total: " + String.format("%.2f", grandTotal));
+    }
+
+    /**
+     * Quotes a CSV field when it contains a comma, quote or line break,
+     * doubling embedded quotes as CatalogImporter expects.
+     */
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static LocalDate readDate(String prompt) {
+        while (true) {
+            System.out.print(prompt);
+            String line = SCANNER.nextLine();
+
+            try {
+                return LocalDate.parse(line.trim());
+            } catch (DateTimeParseException e) {
+                System.out.println("Enter a date as yyyy-mm-dd.");
+            }
+        }
+    }
+
     private static int readInt(String prompt) {
         while (true) {
             System.out.print(prompt);
@@ -441,10 +870,10 @@ public class SmartSalesApp {
 
             try {
                 return Integer.parseInt(line.trim());
-            } catch (Exception e) {
+            } catch (NumberFormatException e) {
                 System.out.println("Enter a valid number.");
-                LOGGER.log(Level.WARNING, "Invalid numeric input: \"" + line + "\"", e);
-                          }
+                LOGGER.fine(() -> "Invalid numeric input: \"" + line + "\"");
+            }
         }
     }
 }
@@ -0,0 +1,493 @@
+package com.saletech;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * StockLedger
+ *
+ * In-memory reservations of stock for shoppers' carts, so that a shopper
+ * learns a product is sold out when adding it rather than at checkout.
+ *
+ * Each SKU has one AtomicLong holding two ints: units in stock (high half)
+ * and units reserved by carts (low half). Reserving is a compare-and-set
+ * loop that only succeeds while stock - reserved covers the request, so
+ * concurrent shoppers never reserve more than exists and never take a lock.
+ *
+ * Reservations belong to a session. A session that has not reserved
+ * anything for reservationTimeout releases everything it holds; a
+ * background task checks for this. After a successful checkout, commit()
+ * turns the session's reservations into stock decrements.
+ *
+ * Stock levels come from the products table: SKUs are loaded on first
+ * use, and a background pass copies quantity_in_stock into every counter
+ * already loaded, keeping the reserved half. Between passes a
+ * counter can be off by checkouts that were in flight during the last pass;
+ * the guarded UPDATE in CheckoutService remains the final check against
+ * overselling.
+ */
+public class StockLedger implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(StockLedger.class.getName());
+
+    // Product ids read per findByIds during reconciliation
+    private static final int RECONCILE_CHUNK_SIZE = 1000;
+
+    private final ProductRepository source;
+    private final long reservationTimeoutMillis;
+    private final long reconcileIntervalMillis;
+
+    // Product id -> packed (stock, reserved)
+    private final Map<Integer, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    // Session id -> reserved units by product id
+    private final Map<String, Holding> holdings = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder expiredSessions = new LongAdder();
+    private final LongAdder reconcileCount = new LongAdder();
+    private final LongAdder corrections = new LongAdder();
+
+    /**
+     * Creates the ledger; start() begins reconciliation and reservation expiry.
+     *
+     * @param source             Repository read for stock levels; should not be cached
+     * @param reservationTimeout Idle time after which a session's reservations are released
+     * @param reconcileInterval  Time between reconciliation passes
+     */
+    public StockLedger(ProductRepository source, Duration reservationTimeout, Duration reconcileInterval) {
+        this.source = source;
+        this.reservationTimeoutMillis = reservationTimeout.toMillis();
+        this.reconcileIntervalMillis = reconcileInterval.toMillis();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-ledger");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Schedules reconciliation (the first pass runs immediately in the
+     * background) and reservation expiry.
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly,
+                0, reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+        long expiryPeriod = Math.max(1000, reservationTimeoutMillis / 4);
+        scheduler.scheduleWithFixedDelay(this::expireIdle, expiryPeriod, expiryPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reserves more units of a product for a session.
+     *
+     * @return false if fewer than qty units are unreserved, or the product does not exist
+     */
+    public boolean reserve(String sessionId, int productId, int qty) {
+        if (qty <= 0) {
+            throw new IllegalArgumentException("qty must be > 0");
+        }
+        AtomicLong counter = counter(productId);
+        if (counter == null) {
+            return false;
+        }
+
+        while (true) {
+            Holding holding = holding(sessionId);
+            synchronized (holding) {
+                if (holding.released) {
+                    continue;
+                }
+                if (!tryReserve(counter, qty)) {
+                    return false;
+                }
+                holding.quantities.merge(productId, qty, Integer::sum);
+                holding.lastTouched = System.currentTimeMillis();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Changes a session's reservation for a product to exactly qty units,
+     * reserving or releasing the difference. 0 releases the product.
+     *
+     * @return false if more units were needed and are not available
+     */
+    public boolean setReserved(String sessionId, int productId, int qty) {
+        if (qty < 0) {
+            throw new IllegalArgumentException("qty must be >= 0");
+        }
+        AtomicLong counter = counter(productId);
+        if (counter == null) {
+            return qty == 0;
+        }
+
+        while (true) {
+            Holding holding = holding(sessionId);
+            synchronized (holding) {
+                if (holding.released) {
+                    continue;
+                }
+                int held = holding.quantities.getOrDefault(productId, 0);
+                if (qty > held && !tryReserve(counter, qty - held)) {
+                    return false;
+                }
+                if (qty < held) {
+                    addReserved(counter, -(held - qty));
+                }
+                if (qty == 0) {
+                    holding.quantities.remove(productId);
+                } else {
+                    holding.quantities.put(productId, qty);
+                }
+                holding.lastTouched = System.currentTimeMillis();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Makes sure a session holds at least the cart quantity of every item,
+     * reserving any shortfall (for example after its reservations expired).
+     * Nothing is reserved unless every item can be.
+     *
+     * @return Items that cannot be covered; empty if the session now holds everything
+     */
+    public List<CheckoutResult.Failure> reserveAll(String sessionId, List<CartItem> items) {
+        // Load missing counters before taking the session lock, so no
+        // database call is made while other calls on the session wait
+        List<Integer> productIds = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            productIds.add(item.getProduct().getId());
+        }
+        Map<Integer, AtomicLong> itemCounters = counters(productIds);
+
+        while (true) {
+            Holding holding = holding(sessionId);
+            synchronized (holding) {
+                if (holding.released) {
+                    continue;
+                }
+
+                List<CheckoutResult.Failure> failures = new ArrayList<>();
+                Map<Integer, Integer> added = new HashMap<>();
+                for (CartItem item : items) {
+                    Product p = item.getProduct();
+                    int held = holding.quantities.getOrDefault(p.getId(), 0);
+                    int missing = item.getQuantity() - held;
+                    if (missing <= 0) {
+                        continue;
+                    }
+                    AtomicLong counter = itemCounters.get(p.getId());
+                    if (counter != null && tryReserve(counter, missing)) {
+                        added.merge(p.getId(), missing, Integer::sum);
+                    } else {
+                        int available = counter == null ? 0 : held + unreserved(counter.get());
+                        failures.add(new CheckoutResult.Failure(
+                                p.getId(), p.getName(), item.getQuantity(), available));
+                    }
+                }
+
+                if (!failures.isEmpty()) {
+                    // All or nothing: give back what this call reserved
+                    for (Map.Entry<Integer, Integer> e : added.entrySet()) {
+                        addReserved(counters.get(e.getKey()), -e.getValue());
+                    }
+                    return failures;
+                }
+
+                for (Map.Entry<Integer, Integer> e : added.entrySet()) {
+                    holding.quantities.merge(e.getKey(), e.getValue(), Integer::sum);
+                }
+                holding.lastTouched = System.currentTimeMillis();
+                return failures;
+            }
+        }
+    }
+
+    /**
+     * Turns a session's reservations into stock decrements for a sale that
+     * has been committed, and releases anything else the session held.
+     */
+    public void commit(String sessionId, Sale sale) {
+        Map<Integer, Integer> sold = new HashMap<>();
+        for (SaleLine line : sale.getLines()) {
+            sold.merge(line.getProduct().getId(), line.getQuantity(), Integer::sum);
+        }
+
+        Holding holding = holdings.remove(sessionId);
+        Map<Integer, Integer> held = Map.of();
+        if (holding != null) {
+            synchronized (holding) {
+                holding.released = true;
+                held = new HashMap<>(holding.quantities);
+                holding.quantities.clear();
+            }
+        }
+
+        for (Map.Entry<Integer, Integer> e : sold.entrySet()) {
+            AtomicLong counter = counters.get(e.getKey());
+            int reserved = held.getOrDefault(e.getKey(), 0);
+            if (counter != null) {
+                int fromReservation = Math.min(reserved, e.getValue());
+                counter.addAndGet(pack(-e.getValue(), -fromReservation));
+            }
+            held.remove(e.getKey());
+        }
+        for (Map.Entry<Integer, Integer> e : held.entrySet()) {
+            addReserved(counters.get(e.getKey()), -e.getValue());
+        }
+    }
+
+    /**
+     * Releases everything a session holds, for example when its cart is emptied.
+     */
+    public void releaseAll(String sessionId) {
+        Holding holding = holdings.get(sessionId);
+        if (holding != null) {
+            release(holding);
+        }
+    }
+
+    /**
+     * @return Units of the product neither sold nor reserved, as far as the ledger knows
+     */
+    public int getAvailable(int productId) {
+        AtomicLong counter = counter(productId);
+        return counter == null ? 0 : Math.max(0, unreserved(counter.get()));
+    }
+
+    /**
+     * Releases the reservations of every session idle longer than the
+     * reservation timeout. Called periodically by the background task.
+     *
+     * @return Number of sessions released
+     */
+    public int expireIdle() {
+        long cutoff = System.currentTimeMillis() - reservationTimeoutMillis;
+        int count = 0;
+        for (Holding holding : holdings.values()) {
+            if (holding.lastTouched < cutoff && release(holding)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            expiredSessions.add(count);
+            LOGGER.fine("Released reservations of " + count + " idle sessions.");
+        }
+        return count;
+    }
+
+    /**
+     * Copies current stock levels from the source repository into the
+     * counters, keeping what is reserved. Only SKUs that already have a
+     * counter are read, RECONCILE_CHUNK_SIZE ids per findByIds, so a pass
+     * costs as much as the products shoppers have touched rather than the
+     * whole catalog. Called periodically by the background task.
+     */
+    public void reconcile() {
+        int changed = 0;
+        List<Integer> ids = new ArrayList<>(counters.keySet());
+        for (int from = 0; from < ids.size(); from += RECONCILE_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + RECONCILE_CHUNK_SIZE, ids.size()));
+            for (Product p : source.findByIds(chunk).values()) {
+                AtomicLong counter = counters.get(p.getId());
+                if (counter != null && setStock(counter, p.getQuantityInStock())) {
+                    changed++;
+                }
+            }
+        }
+
+        reconcileCount.increment();
+        if (changed > 0) {
+            corrections.add(changed);
+            LOGGER.fine("Stock ledger reconciled; " + changed + " SKUs corrected.");
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Stock ledger reconciliation failed.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // ----- Counters -----
+
+    /**
+     * @return The product's counter, loading it from the source on first
+     *         use; null if the product does not exist
+     */
+    private AtomicLong counter(int productId) {
+        AtomicLong counter = counters.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        Optional<Product> p = source.findById(productId);
+        if (p.isEmpty()) {
+            return null;
+        }
+        AtomicLong loaded = new AtomicLong(pack(p.get().getQuantityInStock(), 0));
+        counter = counters.putIfAbsent(productId, loaded);
+        return counter == null ? loaded : counter;
+    }
+
+    /**
+     * @return Counters of the products that exist, loading the ones not yet
+     *         seen with a single findByIds
+     */
+    private Map<Integer, AtomicLong> counters(Collection<Integer> productIds) {
+        Map<Integer, AtomicLong> result = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : productIds) {
+            AtomicLong counter = counters.get(id);
+            if (counter != null) {
+                result.put(id, counter);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Product p : source.findByIds(missing).values()) {
+                AtomicLong loaded = new AtomicLong(pack(p.getQuantityInStock(), 0));
+                AtomicLong counter = counters.putIfAbsent(p.getId(), loaded);
+                result.put(p.getId(), counter == null ? loaded : counter);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the stock half of a counter, keeping the reserved half.
+     *
+     * @return false if the counter already held that stock level
+     */
+    private static boolean setStock(AtomicLong counter, int stock) {
+        while (true) {
+            long current = counter.get();
+            if (stockOf(current) == stock) {
+                return false;
+            }
+            if (counter.compareAndSet(current, pack(stock, reservedOf(current)))) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean tryReserve(AtomicLong counter, int qty) {
+        while (true) {
+            long current = counter.get();
+            if (unreserved(current) < qty) {
+                return false;
+            }
+            if (counter.compareAndSet(current, pack(stockOf(current), reservedOf(current) + qty))) {
+                return true;
+            }
+        }
+    }
+
+    private static void addReserved(AtomicLong counter, int delta) {
+        if (counter != null) {
+            counter.addAndGet(pack(0, delta));
+        }
+    }
+
+    private static long pack(int stock, int reserved) {
+        // Adding two packed values adds both halves, with the low half's
+        // borrow or carry absorbed because both halves are signed ints
+        return ((long) stock << 32) + reserved;
+    }
+
+    private static int stockOf(long packed) {
+        return (int) ((packed - reservedOf(packed)) >> 32);
+    }
+
+    private static int reservedOf(long packed) {
+        return (int) packed;
+    }
+
+    private static int unreserved(long packed) {
+        return stockOf(packed) - reservedOf(packed);
+    }
+
+    // ----- Sessions -----
+
+    private Holding holding(String sessionId) {
+        return holdings.computeIfAbsent(sessionId, id -> new Holding(id));
+    }
+
+    private boolean release(Holding holding) {
+        synchronized (holding) {
+            if (holding.released) {
+                return false;
+            }
+            holding.released = true;
+            for (Map.Entry<Integer, Integer> e : holding.quantities.entrySet()) {
+                addReserved(counters.get(e.getKey()), -e.getValue());
+            }
+            holding.quantities.clear();
+        }
+        holdings.remove(holding.sessionId, holding);
+        return true;
+    }
+
+    // ----- Metrics -----
+
+    /** @return Number of SKUs with a counter */
+    public int getSkuCount() { return counters.size(); }
+
+    /** @return Number of sessions holding reservations */
+    public int getSessionCount() { return holdings.size(); }
+
+    /** @return Number of sessions whose reservations timed out */
+    public long getExpiredSessionCount() { return expiredSessions.sum(); }
+
+    /** @return Number of completed reconciliation passes */
+    public long getReconcileCount() { return reconcileCount.sum(); }
+
+    /** @return Number of counters changed by reconciliation */
+    public long getCorrectionCount() { return corrections.sum(); }
+
+    @Override
+    public String toString() {
+        return String.format("StockLedger[skus=%d, sessions=%d, expired=%d, reconciles=%d, corrections=%d]",
+                getSkuCount(), getSessionCount(), getExpiredSessionCount(),
+                getReconcileCount(), getCorrectionCount());
+    }
+
+    /**
+     * Units reserved by one session. Guarded by the holding itself.
+     */
+    private static final class Holding {
+        final String sessionId;
+        final Map<Integer, Integer> quantities = new HashMap<>();
+        volatile long lastTouched = System.currentTimeMillis();
+        boolean released;
+
+        Holding(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.saletech;
+
+/**
+ * StockListener
+ *
+ * Told about every stock change that DbProductRepository and
+ * CheckoutService commit, after the commit. Called on the thread that made
+ * the change, so implementations must be quick and must not throw.
+ */
+public interface StockListener {
+
+    /**
+     * A new product was inserted with its initial stock.
+     */
+    void productSaved(Product product);
+
+    /**
+     * A product's stock was set to an absolute level.
+     */
+    void quantityChanged(int productId, int newQuantity);
+
+    /**
+     * Units of a product were sold; its stock went down by quantity.
+     * Reported as a difference because concurrent checkouts may commit in
+     * a different order than their listeners run.
+     */
+    void quantitySold(int productId, int quantity);
+}
@@ -0,0 +1,200 @@
+package com.saletech;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * TrigramIndex
+ *
+ * In-memory inverted index that answers case-insensitive substring queries
+ * over product name and manufacturer without scanning the catalog.
+ *
+ * Every run of three lower-cased characters (a trigram) maps to the ids of
+ * the products whose text contains it. A query for "mouse" only has to look
+ * at the shortest posting list among "mou", "ous" and "use", then confirm
+ * each candidate with a plain contains() on the stored lower-cased text.
+ *
+ * Terms shorter than three characters have no trigram, so they fall back to
+ * a scan of the stored text; the text is lower-cased once at index time, not
+ * on every query.
+ *
+ * Thread-safe: queries share a read lock, updates take the write lock.
+ */
+class TrigramIndex {
+
+    // Separates name and manufacturer so a match cannot span both fields
+    private static final char FIELD_SEPARATOR = '\u0001';
+
+    // Packed trigram -> ids of products containing it
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    // Product id -> lower-cased "name<sep>manufacturer"
+    private final IntObjectHashMap<String> texts = new IntObjectHashMap<>();
+
+    // Every indexed id in insertion order, used for short terms
+    private final IntList allIds = new IntList();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Indexes (or re-indexes) a product's name and manufacturer.
+     */
+    void add(int id, String name, String manufacturer) {
+        String text = normalize(name) + FIELD_SEPARATOR + normalize(manufacturer);
+
+        lock.writeLock().lock();
+        try {
+            String previous = texts.put(id, text);
+            if (previous != null) {
+                if (previous.equals(text)) {
+                    return;
+                }
+                for (long trigram : trigramsOf(previous)) {
+                    removePosting(trigram, id);
+                }
+            } else {
+                allIds.add(id);
+            }
+
+            for (long trigram : trigramsOf(text)) {
+                postings.computeIfAbsent(trigram, k -> new IntList()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a product from the index.
+     */
+    void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            String previous = texts.remove(id);
+            if (previous == null) {
+                return;
+            }
+            for (long trigram : trigramsOf(previous)) {
+                removePosting(trigram, id);
+            }
+            allIds.removeValue(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds products whose name or manufacturer contains the term.
+     *
+     * @param term  Search text, any case
+     * @param limit Maximum number of ids to return
+     * @return Matching product ids in indexing order
+     */
+    int[] search(String term, int limit) {
+        String t = normalize(term);
+        if (t.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        lock.readLock().lock();
+        try {
+            IntList candidates = allIds;
+
+            if (t.length() >= 3) {
+                for (long trigram : trigramsOf(t)) {
+                    IntList list = postings.get(trigram);
+                    if (list == null) {
+                        return new int[0];
+                    }
+                    if (list.size < candidates.size) {
+                        candidates = list;
+                    }
+                }
+            }
+
+            IntList matches = new IntList();
+            for (int i = 0; i < candidates.size && matches.size < limit; i++) {
+                int id = candidates.values[i];
+                if (texts.get(id).contains(t)) {
+                    matches.add(id);
+                }
+            }
+            return matches.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @return Number of indexed products */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return texts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removePosting(long trigram, int id) {
+        IntList list = postings.get(trigram);
+        if (list != null) {
+            list.removeValue(id);
+            if (list.size == 0) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    private static String normalize(String s) {
+        return (s == null) ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The distinct trigrams of the text, each packed into a long
+     */
+    private static Set<Long> trigramsOf(String text) {
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            long packed = ((long) text.charAt(i) << 32)
+                    | ((long) text.charAt(i + 1) << 16)
+                    | text.charAt(i + 2);
+            trigrams.add(packed);
+        }
+        return trigrams;
+    }
+
+    /**
+     * Growable int array used for posting lists.
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        void removeValue(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    System.arraycopy(values, i + 1, values, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.saletech;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * WriteBehindProductRepository
+ *
+ * Wraps any ProductRepository and defers updateQuantity. Pending changes are
+ * kept per product id, so ten updates to a hot SKU between flushes become a
+ * single row write with the last value. A background thread hands them to
+ * the wrapped repository's updateQuantities, which DbProductRepository
+ * writes as one batch per transaction, every maxDelay or as soon as
+ * maxBatchSize products are waiting.
+ *
+ * Reads see pending quantities: products returned by this repository carry
+ * the latest value even before it is flushed. Everything other than
+ * updateQuantity is passed straight through.
+ *
+ * A failed flush keeps its changes and retries on the next one. close()
+ * flushes what is left before returning; updates after that go straight to
+ * the wrapped repository. Changes accepted less than maxDelay before a
+ * crash are lost.
+ *
+ * updateQuantity sets an absolute level, so the last write wins. Stock
+ * that CheckoutService decrements in SQL must not also be written through
+ * this repository, or a deferred absolute value can overwrite a sale.
+ */
+public class WriteBehindProductRepository implements ProductRepository, AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(WriteBehindProductRepository.class.getName());
+
+    private static final int CLOSE_FLUSH_ATTEMPTS = 3;
+
+    private final ProductRepository delegate;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+
+    // Product id -> latest unwritten quantity
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // Set by close(); later updates are written straight through
+    private volatile boolean closed;
+
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private volatile long lastFlushLagNanos;
+
+    /**
+     * @param delegate     Repository that owns the data
+     * @param maxDelay     Longest time a change waits before a flush starts
+     * @param maxBatchSize Products written per transaction; reaching it starts a flush early
+     */
+    public WriteBehindProductRepository(ProductRepository delegate, Duration maxDelay, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be > 0");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = Math.max(1, maxDelay.toMillis());
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "product-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts flushing every maxDelay. Until then changes are only written
+     * when maxBatchSize of them are waiting, by flush() or by close().
+     */
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flushQuietly, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return withPending(delegate.findAll());
+    }
+
+    @Override
+    public List<Product> findPage(int afterId, int limit) {
+        return withPending(delegate.findPage(afterId, limit));
+    }
+
+    /**
+     * Flushes pending quantities first so the wrapped repository's totals
+     * include them.
+     */
+    @Override
+    public InventoryStats getInventoryStats() {
+        flushQuietly();
+        return delegate.getInventoryStats();
+    }
+
+    @Override
+    public List<InventoryStats> getInventoryStatsByManufacturer() {
+        flushQuietly();
+        return delegate.getInventoryStatsByManufacturer();
+    }
+
+    @Override
+    public Optional<Product> findById(int id) {
+        return delegate.findById(id).map(this::withPending);
+    }
+
+    @Override
+    public Map<Integer, Product> findByIds(Collection<Integer> ids) {
+        Map<Integer, Product> found = delegate.findByIds(ids);
+        if (pending.isEmpty()) {
+            return found;
+        }
+        Map<Integer, Product> result = new HashMap<>(found);
+        result.replaceAll((id, p) -> withPending(p));
+        return result;
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term) {
+        return withPending(delegate.searchByNameOrManufacturer(term));
+    }
+
+    @Override
+    public List<Product> searchByNameOrManufacturer(String term, int limit) {
+        return withPending(delegate.searchByNameOrManufacturer(term, limit));
+    }
+
+    @Override
+    public void save(Product product) {
+        delegate.save(product);
+    }
+
+    @Override
+    public int saveAll(List<Product> products) {
+        return delegate.saveAll(products);
+    }
+
+    /**
+     * Queues the new quantity; it is written by the next flush. After
+     * close() it is written through instead.
+     */
+    @Override
+    public void updateQuantity(int id, int newQuantity) {
+        updates.increment();
+        if (closed) {
+            delegate.updateQuantity(id, newQuantity);
+            return;
+        }
+
+        long now = System.nanoTime();
+        pending.merge(id, new Pending(newQuantity, now), (older, newer) -> {
+            coalesced.increment();
+            return new Pending(newer.quantity, older.queuedAtNanos);
+        });
+
+        if (closed) {
+            // close() may have finished its last flush before this change was queued
+            flushQuietly();
+        } else if (pending.size() >= maxBatchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushRequested.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                // Closed after the check above; close() writes this change
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    @Override
+    public boolean updateQuantities(Map<Integer, Integer> quantities) {
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            updateQuantity(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Writes every pending change now, maxBatchSize products per call to the
+     * wrapped repository. Changes queued while the flush runs may be
+     * written too or left for the next one.
+     *
+     * @return false if a batch failed; its changes stay pending
+     */
+    public synchronized boolean flush() {
+        Iterator<Map.Entry<Integer, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map<Integer, Pending> batch = new HashMap<>();
+            Map<Integer, Integer> quantities = new HashMap<>();
+            long oldest = Long.MAX_VALUE;
+            while (it.hasNext() && batch.size() < maxBatchSize) {
+                Map.Entry<Integer, Pending> entry = it.next();
+                Pending p = entry.getValue();
+                batch.put(entry.getKey(), p);
+                quantities.put(entry.getKey(), p.quantity);
+                oldest = Math.min(oldest, p.queuedAtNanos);
+            }
+
+            if (!delegate.updateQuantities(quantities)) {
+                failedFlushes.increment();
+                return false;
+            }
+
+            // Only drop entries that were not replaced while writing
+            for (Map.Entry<Integer, Pending> entry : batch.entrySet()) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+            flushes.increment();
+            rowsWritten.add(batch.size());
+            lastFlushLagNanos = System.nanoTime() - oldest;
+        }
+        return true;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            LOGGER.log(Level.WARNING, "Write-behind flush failed", e);
+        }
+    }
+
+    /**
+     * Stops the background flushes and writes everything still pending,
+     * retrying a failed flush a few times.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int attempt = 0; attempt < CLOSE_FLUSH_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            flushQuietly();
+        }
+        if (!pending.isEmpty()) {
+            LOGGER.severe(pending.size() + " quantity updates could not be written at shutdown: "
+                    + pending.keySet());
+        }
+    }
+
+    private List<Product> withPending(List<Product> products) {
+        if (pending.isEmpty()) {
+            return products;
+        }
+        List<Product> result = new ArrayList<>(products.size());
+        for (Product p : products) {
+            result.add(withPending(p));
+        }
+        return result;
+    }
+
+    /**
+     * @return The product, or a copy with its pending quantity; the wrapped
+     *         repository's instance is not changed
+     */
+    private Product withPending(Product p) {
+        Pending change = pending.get(p.getId());
+        if (change == null || change.quantity == p.getQuantityInStock()) {
+            return p;
+        }
+        return new Product(p.getId(), p.getName(), p.getManufacturer(), p.getPrice(), change.quantity);
+    }
+
+    // ----- Metrics -----
+
+    /** @return Products with a change waiting to be written */
+    public int getQueueDepth() { return pending.size(); }
+
+    /** @return Age of the oldest unwritten change in milliseconds, 0 if none */
+    public long getFlushLagMillis() {
+        long now = System.nanoTime();
+        long oldest = now;
+        for (Pending p : pending.values()) {
+            oldest = Math.min(oldest, p.queuedAtNanos);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(now - oldest);
+    }
+
+    /** @return Age of the oldest change written by the last successful batch, in milliseconds */
+    public long getLastFlushLagMillis() { return TimeUnit.NANOSECONDS.toMillis(lastFlushLagNanos); }
+
+    /** @return Number of updateQuantity calls */
+    public long getUpdateCount() { return updates.sum(); }
+
+    /** @return Updates that replaced a change still waiting to be written */
+    public long getCoalescedCount() { return coalesced.sum(); }
+
+    /** @return Rows written to the wrapped repository */
+    public long getRowsWritten() { return rowsWritten.sum(); }
+
+    /** @return Batches written successfully */
+    public long getFlushCount() { return flushes.sum(); }
+
+    /** @return Batches that failed and were kept for retry */
+    public long getFailedFlushCount() { return failedFlushes.sum(); }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehind[queued=%d, lag=%dms, updates=%d, coalesced=%d, "
+                        + "written=%d, flushes=%d, failed=%d, lastLag=%dms]",
+                getQueueDepth(), getFlushLagMillis(), getUpdateCount(), getCoalescedCount(),
+                getRowsWritten(), getFlushCount(), getFailedFlushCount(), getLastFlushLagMillis());
+    }
+
+    /**
+     * A quantity waiting to be written and when the first unwritten change
+     * to that product was queued.
+     */
+    private static final class Pending {
+        final int quantity;
+        final long queuedAtNanos;
+
+        Pending(int quantity, long queuedAtNanos) {
+            this.quantity = quantity;
+            this.queuedAtNanos = queuedAtNanos;
+        }
+    }
+}